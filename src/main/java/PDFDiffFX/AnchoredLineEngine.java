@@ -0,0 +1,96 @@
+package PDFDiffFX;
+
+/**
+ * Base for engines that first diff the texts line by line, anchoring on lines they share, and then diff
+ * each block of changed lines character by character (or word by word) with diff_match_patch.
+ */
+abstract class AnchoredLineEngine implements DiffEngine {
+
+    // a piece of work on the engines' explicit stacks: diff a pair of ranges, or emit an equality
+    static final int DIFF = 0;
+    static final int EQUAL = 1;
+
+    private final diff_match_patch dmp;
+    private final boolean words;
+
+    /**
+     * @param dmp Diffs the blocks of changed lines
+     * @param words Whether changed lines are diffed a word at a time rather than a character at a time
+     */
+    AnchoredLineEngine(diff_match_patch dmp, boolean words) {
+        this.dmp = dmp;
+        this.words = words;
+    }
+
+    /**
+     * Diffs the line tokens of two texts.
+     * @param tokens The texts' line tokens
+     * @param budget Limit on the work done, for the Myers diffs of ranges without anchors
+     * @param runs Where to add the line-level runs, in order
+     */
+    abstract void diffLines(TextTokens tokens, diff_match_patch.Budget budget, TextTokens.Runs runs);
+
+    @Override
+    public PackedDiff diff(String text1, String text2, diff_match_patch.Budget budget) {
+        TextTokens tokens = TextTokens.lines(text1, text2);
+        TextTokens.Runs runs = new TextTokens.Runs();
+        diffLines(tokens, budget, runs);
+
+        // rediff each replaced block of lines in detail; runs always put a block's deletion first
+        PackedDiff lines = tokens.toPacked(runs.toArray());
+        PackedDiff diff = new PackedDiff(text1, text2);
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.operation(i) == PackedDiff.DELETE && i + 1 < lines.size()
+                    && lines.operation(i + 1) == PackedDiff.INSERT) {
+                diff.append(detail(lines.text(i), lines.text(i + 1), budget), lines.start(i), lines.start(i + 1));
+                i++;
+            } else {
+                diff.append(lines.operation(i), lines.start(i), lines.length(i));
+            }
+        }
+        return diff;
+    }
+
+    @Override
+    public boolean wordLevel() {
+        return words;
+    }
+
+    /**
+     * Diffs a block of deleted lines against the block inserted in its place.
+     */
+    private PackedDiff detail(String deleted, String inserted, diff_match_patch.Budget budget) {
+        if (words) {
+            TextTokens tokens = TextTokens.words(deleted, inserted);
+            return tokens.toPacked(tokens.diff(budget));
+        }
+        return PackedDiff.pack(deleted, inserted, dmp.diff_main(deleted, inserted, false, budget));
+    }
+
+    /**
+     * Strips the common prefix and suffix from a pair of ranges, adding the prefix to runs.
+     * @param a The tokens of text1
+     * @param b The tokens of text2
+     * @param range {start1, end1, start2, end2}; narrowed in place to what is left between prefix and suffix
+     * @param runs Where to add the prefix
+     * @return The length of the suffix, which the caller must add once the middle has been diffed
+     */
+    static int trim(int[] a, int[] b, int[] range, TextTokens.Runs runs) {
+        int prefix = 0;
+        while (range[0] + prefix < range[1] && range[2] + prefix < range[3]
+                && a[range[0] + prefix] == b[range[2] + prefix]) {
+            prefix++;
+        }
+        runs.add(PackedDiff.EQUAL, range[0], prefix);
+        range[0] += prefix;
+        range[2] += prefix;
+        int suffix = 0;
+        while (range[1] - suffix > range[0] && range[3] - suffix > range[2]
+                && a[range[1] - suffix - 1] == b[range[3] - suffix - 1]) {
+            suffix++;
+        }
+        range[1] -= suffix;
+        range[3] -= suffix;
+        return suffix;
+    }
+}
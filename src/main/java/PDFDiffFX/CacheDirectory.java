@@ -0,0 +1,185 @@
+package PDFDiffFX;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The directory of one of the on-disk caches (TextCache, RasterCache), kept under a size limit by evicting
+ * the least recently used entries, using each entry's modification time as its last use.
+ * <p>
+ * The total size of the entries is counted once, when the cache is opened, and kept up to date as entries
+ * are written and deleted, so storing an entry doesn't mean listing the whole directory. Only once the total
+ * goes over the limit is the directory listed, and then old entries are evicted down to LOW_WATER of the
+ * limit, so that a full cache is listed again only after a good number of new entries rather than on every
+ * one. The listing also corrects the total for entries that other processes sharing the directory have
+ * added or removed meanwhile. Several threads may use the directory at once.
+ */
+class CacheDirectory {
+
+    // the share of the limit that eviction brings the cache down to
+    static final double LOW_WATER = 0.9;
+
+    private final Path dir;
+    private final String suffix;
+    private final long maxBytes;
+    private long totalBytes;
+
+    /**
+     * @param dir The directory holding the cache entries; created if it doesn't exist
+     * @param suffix The file name suffix of the entries; other files in the directory are left alone
+     * @param maxBytes The total size the entries may grow to before old ones are evicted
+     * @throws IOException if the directory cannot be created or listed
+     */
+    CacheDirectory(File dir, String suffix, long maxBytes) throws IOException {
+        this.dir = dir.toPath();
+        this.suffix = suffix;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(this.dir);
+        for (Path entry : entries()) {
+            totalBytes += entry.toFile().length();
+        }
+    }
+
+    /**
+     * @param name The name of an entry, without the suffix
+     * @return The path of the entry
+     */
+    Path entry(String name) {
+        return dir.resolve(name + suffix);
+    }
+
+    /**
+     * Marks an entry as recently used. An entry that can't be marked, because it has just been evicted or
+     * belongs to another user sharing the directory, is left as it is: it was read all the same.
+     * @param entry The entry file
+     */
+    void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // only the eviction order suffers
+        }
+    }
+
+    /**
+     * Writes an entry, replacing any entry of the same name, then evicts old entries if the cache has grown
+     * past its limit. The entry is written to a temporary file and moved into place, so readers never see a
+     * partial entry.
+     * @param entry The entry file
+     * @param bytes The entry's content
+     * @throws IOException if the entry cannot be written, or the directory cannot be listed for eviction
+     */
+    void write(Path entry, byte[] bytes) throws IOException {
+        Path tmp = Files.createTempFile(dir, "entry", ".tmp");
+        long replaced;
+        try {
+            Files.write(tmp, bytes);
+            replaced = entry.toFile().length();
+            try {
+                Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        if (added(bytes.length - replaced)) {
+            evict();
+        }
+    }
+
+    /**
+     * Deletes an entry, e.g. one found to be corrupt.
+     * @param entry The entry file
+     * @throws IOException if the entry cannot be deleted
+     */
+    void delete(Path entry) throws IOException {
+        long length = entry.toFile().length();
+        if (Files.deleteIfExists(entry)) {
+            added(-length);
+        }
+    }
+
+    /**
+     * @return The total size of the entries, as counted so far
+     */
+    synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Counts bytes added to (or, if negative, removed from) the cache.
+     * @return true if the cache is now over its limit
+     */
+    private synchronized boolean added(long bytes) {
+        totalBytes += bytes;
+        return totalBytes > maxBytes;
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is within LOW_WATER of its limit. Only one
+     * thread evicts at a time, so entries aren't counted twice.
+     * @throws IOException if the cache directory cannot be listed
+     */
+    private synchronized void evict() throws IOException {
+        if (totalBytes <= maxBytes) {
+            // another thread has evicted meanwhile
+            return;
+        }
+        // other threads and processes may touch entries meanwhile, so sort a snapshot of their times rather
+        // than the live ones, which could change under the sort
+        List<Entry> byAge = new ArrayList<>();
+        long total = 0;
+        for (Path p : entries()) {
+            File file = p.toFile();
+            Entry entry = new Entry(p, file.lastModified(), file.length());
+            byAge.add(entry);
+            total += entry.length;
+        }
+        byAge.sort(Comparator.comparingLong(e -> e.lastModified));
+        long target = (long) (maxBytes * LOW_WATER);
+        for (Entry entry : byAge) {
+            if (total <= target) {
+                break;
+            }
+            total -= entry.length;
+            Files.deleteIfExists(entry.path);
+        }
+        totalBytes = total;
+    }
+
+    /**
+     * @return The entries in the directory
+     * @throws IOException if the directory cannot be listed
+     */
+    private List<Path> entries() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(suffix)).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * An entry as it was when the directory was listed for eviction.
+     */
+    private static class Entry {
+        final Path path;
+        final long lastModified;
+        final long length;
+
+        Entry(Path path, long lastModified, long length) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+}
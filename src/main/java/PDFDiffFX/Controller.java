@@ -9,6 +9,7 @@ import javafx.scene.input.DragEvent;
 import javafx.scene.input.Dragboard;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.StackPane;
+import javafx.stage.DirectoryChooser;
 
 import java.io.File;
 import java.net.URISyntaxException;
@@ -21,6 +22,10 @@ public class Controller implements Initializable {
     public CheckBox checkBoxCopySummary;
     public CheckBox checkBoxReportVisual;
     public CheckBox checkBoxReportText;
+    public CheckBox checkBoxLowMemory;
+    public TextField textMemoryMB;
+    public TextField textScratchDir;
+    public Button btnScratchDir;
     public Label labelReports;
     public Label labelInstructions;
     public Label labelOutPath;
@@ -127,14 +132,45 @@ public class Controller implements Initializable {
             return;
         }
 
+        // get low-memory settings: main memory allowed per document, and where the rest goes
+        String memoryLimit = null;
+        String scratchDir = null;
+        if (checkBoxLowMemory.isSelected()) {
+            memoryLimit = textMemoryMB.getText().trim();
+            if (!memoryLimit.matches("\\d+")) {
+                AlertBox.display("Invalid memory limit", "Enter the memory allowed per file, in MB.");
+                return;
+            }
+            scratchDir = textScratchDir.getText().trim();
+            if (scratchDir.isEmpty()) {
+                scratchDir = null;
+            } else if (!new File(scratchDir).isDirectory()) {
+                AlertBox.display("Directory not found", scratchDir + " is not a directory.");
+                return;
+            }
+        }
+
         // get -d flag
         String dumpArg = checkBoxCopySummary.isSelected() ? "-d" : null;
         String graphicalArg = checkBoxReportVisual.isSelected() ? "-g" : null;
+        String memoryArg = memoryLimit != null ? "-m" : null;
+        String scratchArg = scratchDir != null ? "-s" : null;
 
-        PDFDiff.main(new String[]{pathFile1, pathFile2, pathOut + "/" + name, dumpArg, graphicalArg});
+        PDFDiff.main(new String[]{pathFile1, pathFile2, pathOut + "/" + name, dumpArg, graphicalArg,
+                memoryArg, memoryLimit, scratchArg, scratchDir});
 
     }
 
+    @FXML
+    private void chooseScratchDir() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Scratch directory for low memory mode");
+        File dir = chooser.showDialog(layout.getScene().getWindow());
+        if (dir != null) {
+            textScratchDir.setText(dir.getPath());
+        }
+    }
+
     @FXML
     public void launchReadme() {
 
@@ -144,6 +180,9 @@ public class Controller implements Initializable {
     public void initialize(URL url, ResourceBundle resourceBundle) {
         paneFile1.setOnDragDropped(e -> dragDroppedHandler(e, "file1"));
         paneFile2.setOnDragDropped(e -> dragDroppedHandler(e, "file2"));
+        textMemoryMB.disableProperty().bind(checkBoxLowMemory.selectedProperty().not());
+        textScratchDir.disableProperty().bind(checkBoxLowMemory.selectedProperty().not());
+        btnScratchDir.disableProperty().bind(checkBoxLowMemory.selectedProperty().not());
         try {
             pdfIcon = new Image(getClass().getResource("/pdfIcon.png").toURI().toString(), 100, 100, false, false);
         } catch (URISyntaxException _e) {
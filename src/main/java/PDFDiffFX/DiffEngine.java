@@ -0,0 +1,51 @@
+package PDFDiffFX;
+
+/**
+ * An algorithm for diffing two texts. Every engine produces a PackedDiff covering both texts in order, so
+ * the reports don't care which one was used.
+ * <ul>
+ *     <li>myers: diff_match_patch's own diff, a line-level pass followed by Myers bisection of the changed
+ *     lines (the default)</li>
+ *     <li>patience: anchors on lines that occur exactly once in each text, then Myers between anchors</li>
+ *     <li>histogram: anchors on the rarest lines the texts share, then Myers where nothing is shared</li>
+ * </ul>
+ * Patience and histogram never match a change against common lines such as blank lines or headers, so on
+ * large, mostly-identical documents they are both faster and more stable than the Myers line pass.
+ */
+interface DiffEngine {
+
+    /**
+     * Diffs two texts.
+     * @param text1 The "original" or "expected" text
+     * @param text2 The "actual" text
+     * @param budget Limit on the work done, from DiffScheduler
+     * @return The diff
+     */
+    PackedDiff diff(String text1, String text2, diff_match_patch.Budget budget);
+
+    /**
+     * @return true if changes are diffed a word at a time rather than a character at a time
+     */
+    boolean wordLevel();
+
+    /**
+     * Creates an engine by name, as given on the command line.
+     * @param name "myers", "patience" or "histogram"
+     * @param dmp Provides the diff's budget and the character or word diff of changed lines
+     * @param words Whether changes are diffed a word at a time
+     * @return The engine
+     * @throws IllegalArgumentException if there is no engine of that name
+     */
+    static DiffEngine create(String name, diff_match_patch dmp, boolean words) {
+        switch (name) {
+            case "myers":
+                return new MyersEngine(dmp, words);
+            case "patience":
+                return new PatienceEngine(dmp, words);
+            case "histogram":
+                return new HistogramEngine(dmp, words);
+            default:
+                throw new IllegalArgumentException("Unknown diff engine: " + name);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package PDFDiffFX;
+
+/**
+ * Hands out the budget for each diff of a run, and decides what a diff that runs out of budget falls back to.
+ * <p>
+ * Page diffs get a budget in proportion to the size of their text, so that a page with a dense table can't
+ * hold up the run for as long as a whole document, nor a one-line page get as long as a full one. The
+ * configured budget (diff_match_patch's Diff_Timeout, or Diff_Budget in cells) is what a page of
+ * REFERENCE_LENGTH characters on each side gets; smaller pages get less, down to MIN_SHARE of it, and
+ * larger pages more. Whole-document diffs get the configured budget, as before.
+ * <p>
+ * A run may also have a deadline, past which no diff may run however much of its own budget is left. Diffs
+ * that run out are redone line by line, which takes a fixed amount of work, so the reports are complete
+ * but approximate: a changed line is shown as a deleted and an inserted line rather than in detail.
+ */
+class DiffScheduler {
+
+    // the length of text, both sides together, that gets the configured budget
+    static final int REFERENCE_LENGTH = 8 * 1024;
+    // the least share of the configured budget a page gets, however short it is
+    private static final double MIN_SHARE = 1.0 / 16;
+    // edit-graph cells for the fallback line diff; enough for tens of thousands of changed lines
+    private static final long FALLBACK_CELLS = 50_000_000;
+
+    private final diff_match_patch dmp;
+    private final long runDeadline;
+
+    /**
+     * @param dmp Holds the configured budget, which is read when each budget is handed out
+     * @param runDeadline The time (as System.currentTimeMillis) by which every diff must stop, or
+     *      Long.MAX_VALUE for none
+     */
+    DiffScheduler(diff_match_patch dmp, long runDeadline) {
+        this.dmp = dmp;
+        this.runDeadline = runDeadline;
+    }
+
+    /**
+     * Creates the budget for the diff of a pair of pages.
+     * @param length The length of both pages' text together
+     * @return The budget, in proportion to the length
+     */
+    diff_match_patch.Budget pageBudget(int length) {
+        double share = Math.max(MIN_SHARE, (double) length / REFERENCE_LENGTH);
+        if (dmp.Diff_Budget > 0) {
+            long cells = (long) Math.min(Long.MAX_VALUE / 2, dmp.Diff_Budget * share);
+            return new diff_match_patch.Budget(runDeadline, cells);
+        }
+        if (dmp.Diff_Timeout <= 0) {
+            return new diff_match_patch.Budget(runDeadline, Long.MAX_VALUE);
+        }
+        long deadline = System.currentTimeMillis() + (long) (dmp.Diff_Timeout * 1000 * share);
+        return new diff_match_patch.Budget(Math.min(deadline, runDeadline), Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates the budget for a diff of whole documents.
+     * @return The configured budget, cut short by the run deadline
+     */
+    diff_match_patch.Budget documentBudget() {
+        diff_match_patch.Budget budget = dmp.diff_newBudget();
+        return runDeadline == Long.MAX_VALUE ? budget : budget.before(runDeadline);
+    }
+
+    /**
+     * Diffs two texts line by line, for a diff that ran out of budget. Changed lines are not diffed further.
+     * @param text1 The "original" or "expected" text
+     * @param text2 The "actual" text
+     * @return The diff
+     */
+    PackedDiff fallback(String text1, String text2) {
+        TextTokens tokens = TextTokens.lines(text1, text2);
+        return tokens.toPacked(tokens.diff(new diff_match_patch.Budget(Long.MAX_VALUE, FALLBACK_CELLS)));
+    }
+}
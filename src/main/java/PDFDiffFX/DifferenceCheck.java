@@ -0,0 +1,120 @@
+package PDFDiffFX;
+
+import de.redsix.pdfcompare.env.Environment;
+import de.redsix.pdfcompare.env.SimpleEnvironment;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Answers only whether two documents differ, for scripts and CI jobs that gate on the answer and have no use
+ * for the reports. Each pair of pages is compared in order of increasing cost, going on to the next step
+ * only while the pages still look the same:
+ * <ol>
+ *     <li>their fingerprints: pages with the same fingerprint cannot differ</li>
+ *     <li>their text</li>
+ *     <li>optionally, the rendered pages, pixel by pixel, rendered as the graphical report renders them (so
+ *     pages that differ only in rotation are the same)</li>
+ * </ol>
+ * The check stops at the first pair found to differ. Without the raster step, pages with the same text are
+ * taken to be the same, as they are by the textual reports. Nothing here touches JavaFX, so the check runs
+ * on headless machines.
+ */
+class DifferenceCheck {
+
+    // exit statuses, as used by cmp and diff
+    static final int SAME = 0;
+    static final int DIFFERENT = 1;
+    static final int ERROR = 2;
+
+    // renders as the graphical report does, at PdfComparator's default resolution
+    private final Environment environment = new SimpleEnvironment();
+
+    private final boolean fingerprints;
+    private final boolean raster;
+    private String difference;
+
+    /**
+     * @param fingerprints Whether to compare page fingerprints before text
+     * @param raster Whether to compare pages with the same text by rendering them
+     */
+    DifferenceCheck(boolean fingerprints, boolean raster) {
+        this.fingerprints = fingerprints;
+        this.raster = raster;
+    }
+
+    /**
+     * Compares the selected pages of two documents, pairing them by position, until a difference is found.
+     * @param source1 The first document
+     * @param range1 The pages of the first document to compare; null for every page
+     * @param source2 The second document
+     * @param range2 The pages of the second document to compare; null for every page
+     * @return true if the documents differ
+     * @throws IOException if either document cannot be read
+     */
+    boolean differ(DocumentSource source1, PageRange range1, DocumentSource source2, PageRange range2)
+            throws IOException {
+        // identical files need not be parsed at all
+        if (range1 == range2 && Arrays.equals(source1.sha256(), source2.sha256())) {
+            return false;
+        }
+        PDDocument doc1 = source1.getDocument(), doc2 = source2.getDocument();
+        int[] pages1 = PageRange.resolve(range1, doc1.getNumberOfPages());
+        int[] pages2 = PageRange.resolve(range2, doc2.getNumberOfPages());
+        if (pages1.length != pages2.length) {
+            difference = String.format("%d page(s) against %d", pages1.length, pages2.length);
+            return true;
+        }
+        PageFingerprints.Digester digester1 = new PageFingerprints.Digester();
+        PageFingerprints.Digester digester2 = new PageFingerprints.Digester();
+        for (int k = 0; k < pages1.length; k++) {
+            int page1 = pages1[k], page2 = pages2[k];
+            if (fingerprints && MessageDigest.isEqual(digester1.digest(doc1.getPage(page1)),
+                    digester2.digest(doc2.getPage(page2)))) {
+                continue;
+            }
+            String text1 = ExtractedText.extract(doc1, new int[]{page1}, null).getText();
+            String text2 = ExtractedText.extract(doc2, new int[]{page2}, null).getText();
+            if (!text1.equals(text2)) {
+                difference = "text of page " + (page1 + 1);
+                return true;
+            }
+            if (raster && !sameImage(GraphicalDiffPool.renderUnrotated(doc1, page1, environment).bufferedImage,
+                    GraphicalDiffPool.renderUnrotated(doc2, page2, environment).bufferedImage)) {
+                difference = "rendering of page " + (page1 + 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return What the first difference was, e.g. "text of page 3", numbered by the first document's page;
+     *      null if no difference was found
+     */
+    String difference() {
+        return difference;
+    }
+
+    /**
+     * @return true if the images are the same size and every pixel has the same color
+     */
+    private static boolean sameImage(BufferedImage image1, BufferedImage image2) {
+        int width = image1.getWidth(), height = image1.getHeight();
+        if (width != image2.getWidth() || height != image2.getHeight()) {
+            return false;
+        }
+        int[] row1 = new int[width], row2 = new int[width];
+        for (int y = 0; y < height; y++) {
+            image1.getRGB(0, y, width, 1, row1, 0, width);
+            image2.getRGB(0, y, width, 1, row2, 0, width);
+            if (!Arrays.equals(row1, row2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An input PDF together with the memory settings it should be loaded with. The main copy of the document
+ * is only parsed when something first asks for it, so a run that can be answered without PDFBox (e.g. from
+ * the text cache) never parses the file. Anything that needs its own copy of a document (e.g. a worker
+ * thread) loads it through here, so every copy honours the same low-memory settings as the main one.
+ */
+class DocumentSource implements Closeable {
+
+    private final File file;
+    private final MemoryUsageSetting memoryUsage;
+    private PDDocument document;
+    private byte[] sha256;
+
+    /**
+     * @param file The PDF file
+     * @param memoryUsage How PDFBox should buffer the document's data; null for PDFBox's default of
+     *      unrestricted main memory
+     */
+    DocumentSource(File file, MemoryUsageSetting memoryUsage) {
+        this.file = file;
+        this.memoryUsage = memoryUsage;
+    }
+
+    /**
+     * Creates the memory settings for the low-memory loading mode, where PDFBox keeps at most a fixed
+     * amount of each document's data in main memory and spills the rest to a scratch file.
+     * @param maxMainMemoryMB The most main memory each loaded document may use, in megabytes; 0 buffers
+     *      everything in the scratch file
+     * @param scratchDir The directory for scratch files; null for the system temp directory
+     * @return The memory settings
+     */
+    static MemoryUsageSetting lowMemory(long maxMainMemoryMB, File scratchDir) {
+        MemoryUsageSetting setting = maxMainMemoryMB > 0
+                ? MemoryUsageSetting.setupMixed(maxMainMemoryMB * 1024 * 1024)
+                : MemoryUsageSetting.setupTempFileOnly();
+        return setting.setTempDir(scratchDir);
+    }
+
+    /**
+     * @return The PDF file
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the main copy of the document, loading it on first use. It is closed along with this source.
+     * @return The loaded document
+     * @throws IOException if the file cannot be read or parsed
+     */
+    synchronized PDDocument getDocument() throws IOException {
+        if (document == null) {
+            document = load();
+        }
+        return document;
+    }
+
+    /**
+     * Loads a new copy of the document. The caller is responsible for closing it.
+     * @return The loaded document
+     * @throws IOException if the file cannot be read or parsed
+     */
+    PDDocument load() throws IOException {
+        if (memoryUsage == null) {
+            return PDDocument.load(file);
+        }
+        return PDDocument.load(file, memoryUsage);
+    }
+
+    /**
+     * Loads a new copy of the document with memory settings of its own, e.g. for a worker with a tighter
+     * cap than the main copy. The caller is responsible for closing it.
+     * @param memoryUsage How PDFBox should buffer this copy's data
+     * @return The loaded document
+     * @throws IOException if the file cannot be read or parsed
+     */
+    PDDocument load(MemoryUsageSetting memoryUsage) throws IOException {
+        return PDDocument.load(file, memoryUsage);
+    }
+
+    /**
+     * Computes the SHA-256 digest of the raw file, once.
+     * @return The digest
+     * @throws IOException if the file cannot be read
+     */
+    synchronized byte[] sha256() throws IOException {
+        if (sha256 == null) {
+            MessageDigest digest = newSha256();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+                byte[] buffer = new byte[64 * 1024];
+                while (in.read(buffer) != -1) {
+                    // the digest is updated as the stream is read
+                }
+            }
+            sha256 = digest.digest();
+        }
+        return sha256;
+    }
+
+    /**
+     * @return A new SHA-256 MessageDigest
+     */
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (document != null) {
+            document.close();
+            document = null;
+        }
+    }
+}
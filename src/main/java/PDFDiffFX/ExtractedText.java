@@ -0,0 +1,299 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The text of a document, extracted once and then shared by every report that needs it.
+ * Holds the concatenated text of the whole document along with the offsets at which each page
+ * begins, so the whole-document, paginated and summary reports all read from the same extraction.
+ * When only some of the document's pages were selected, only those pages are held, along with
+ * their page numbers in the document.
+ */
+class ExtractedText {
+
+    private final String text;
+    // pageOffsets[i] is the index in text where page i begins; the last entry is text.length()
+    private final int[] pageOffsets;
+    // pageNumbers[i] is the zero-based index in the document of page i
+    private final int[] pageNumbers;
+
+    /**
+     * Receives each page's text as soon as it has been extracted. Pages are always delivered in order, and
+     * identified by their zero-based index in the document.
+     */
+    interface PageListener {
+        void pageExtracted(int page, String text) throws IOException;
+    }
+
+    ExtractedText(String text, int[] pageOffsets) {
+        this(text, pageOffsets, PageRange.resolve(null, pageOffsets.length - 1));
+    }
+
+    ExtractedText(String text, int[] pageOffsets, int[] pageNumbers) {
+        this.text = text;
+        this.pageOffsets = pageOffsets;
+        this.pageNumbers = pageNumbers;
+    }
+
+    /**
+     * Extracts the text of a document in a single pass, recording where each page begins.
+     * @param document The document to extract
+     * @return The extracted text
+     * @throws IOException if PDFBox fails while stripping text from the document
+     */
+    static ExtractedText extract(PDDocument document) throws IOException {
+        return extract(document, null, null);
+    }
+
+    /**
+     * Extracts the text of some of a document's pages in a single pass, handing each page to a listener
+     * as it completes. Pages outside the selection are skipped without decoding their content streams.
+     * @param document The document to extract
+     * @param pages The zero-based indices of the pages to extract, in ascending order; null for every page
+     * @param listener Notified of each page in order; may be null
+     * @return The extracted text
+     * @throws IOException if PDFBox fails while stripping text from the document, or the listener fails
+     */
+    static ExtractedText extract(PDDocument document, int[] pages, PageListener listener) throws IOException {
+        if (pages == null) {
+            pages = PageRange.resolve(null, document.getNumberOfPages());
+        }
+        return new PageTrackingStripper(pages, listener).strip(document);
+    }
+
+    /**
+     * Extracts the text of a document, splitting the pages into ranges that are stripped in parallel.
+     * PDFBox documents are not safe to share between threads, so each worker opens its own copy of the
+     * source file and strips its ranges with its own PDFTextStripper. The ranges are stitched back
+     * together in page order, giving the same result as {@link #extract(PDDocument, int[], PageListener)}.
+     * @param document The loaded document, used directly when extracting sequentially
+     * @param source Where the document was loaded from, used by each worker to load its own copy
+     * @param pages The zero-based indices of the pages to extract, in ascending order; null for every page
+     * @param threads The number of worker threads; 1 or fewer extracts sequentially
+     * @param listener Notified of each page in order as its range is reassembled; may be null
+     * @return The extracted text
+     * @throws IOException if PDFBox fails while loading or stripping the document, or the listener fails
+     */
+    static ExtractedText extract(PDDocument document, DocumentSource source, int[] pages, int threads,
+                                 PageListener listener) throws IOException {
+        int[] selection = pages != null ? pages : PageRange.resolve(null, document.getNumberOfPages());
+        int pageCount = selection.length;
+        if (threads <= 1 || pageCount < 2) {
+            return extract(document, selection, listener);
+        }
+        // several ranges per worker so that one slow range doesn't leave the other workers idle
+        int rangeCount = Math.min(pageCount, threads * 4);
+        int rangeSize = (pageCount + rangeCount - 1) / rangeCount;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Queue<PDDocument> workerDocs = new ConcurrentLinkedQueue<>();
+        ThreadLocal<PDDocument> workerDoc = new ThreadLocal<>();
+        try {
+            List<Future<ExtractedText>> ranges = new ArrayList<>();
+            for (int start = 0; start < pageCount; start += rangeSize) {
+                int[] rangePages = Arrays.copyOfRange(selection, start, Math.min(start + rangeSize, pageCount));
+                ranges.add(pool.submit(() -> {
+                    PDDocument doc = workerDoc.get();
+                    if (doc == null) {
+                        doc = source.load();
+                        workerDoc.set(doc);
+                        workerDocs.add(doc);
+                    }
+                    return new PageTrackingStripper(rangePages, null).strip(doc);
+                }));
+            }
+
+            // reassemble in page order, shifting each range's offsets by the length of the text before it
+            StringBuilder text = new StringBuilder();
+            int[] offsets = new int[pageCount + 1];
+            int page = 0;
+            for (Future<ExtractedText> future : ranges) {
+                ExtractedText range = future.get();
+                int base = text.length();
+                for (int i = 0; i < range.pageCount(); i++, page++) {
+                    offsets[page + 1] = base + range.pageEnd(i);
+                    if (listener != null) {
+                        listener.pageExtracted(selection[page], range.getPage(i));
+                    }
+                }
+                text.append(range.getText());
+            }
+            return new ExtractedText(text.toString(), offsets, selection);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting text", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Text extraction failed", e.getCause());
+        } finally {
+            // let any workers still running wind down before their documents are closed
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (PDDocument doc : workerDocs) {
+                doc.close();
+            }
+        }
+    }
+
+    /**
+     * Narrows the text down to some of its pages.
+     * @param pages The document page indices to keep, in ascending order; each must be one of this
+     *      text's page numbers
+     * @return The text of the selected pages
+     */
+    ExtractedText select(int[] pages) {
+        StringBuilder selected = new StringBuilder();
+        int[] offsets = new int[pages.length + 1];
+        for (int i = 0, j = 0; i < pages.length; i++, j++) {
+            while (pageNumbers[j] != pages[i]) {
+                j++;
+            }
+            selected.append(text, pageStart(j), pageEnd(j));
+            offsets[i + 1] = selected.length();
+        }
+        return new ExtractedText(selected.toString(), offsets, pages);
+    }
+
+    /**
+     * @return The number of pages in the document
+     */
+    int pageCount() {
+        return pageOffsets.length - 1;
+    }
+
+    /**
+     * @param page The zero-based page index into this text
+     * @return The zero-based index of the same page in the document
+     */
+    int pageNumber(int page) {
+        return pageNumbers[page];
+    }
+
+    /**
+     * @return The text of the entire document
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * @param page The zero-based page index
+     * @return The text of a single page
+     */
+    String getPage(int page) {
+        return text.substring(pageStart(page), pageEnd(page));
+    }
+
+    /**
+     * @param page The zero-based page index
+     * @return The offset into the whole text at which the page begins
+     */
+    int pageStart(int page) {
+        return pageOffsets[page];
+    }
+
+    /**
+     * @param page The zero-based page index
+     * @return The offset into the whole text just past the end of the page
+     */
+    int pageEnd(int page) {
+        return pageOffsets[page + 1];
+    }
+
+    /**
+     * A text stripper that notes how much text had been written when each page finished, which
+     * lets a single getText pass be cut back into pages. Only the selected pages are processed; the
+     * rest are passed over without their content streams ever being parsed.
+     */
+    private static class PageTrackingStripper extends PDFTextStripper {
+
+        private final int[] pages;
+        private final int[] pageEnds;
+        private final StringWriter writer = new StringWriter();
+        private final PageListener listener;
+        private int pagesReported = 0;
+
+        PageTrackingStripper(int[] pages, PageListener listener) throws IOException {
+            this.pages = pages;
+            this.listener = listener;
+            pageEnds = new int[pages.length];
+            Arrays.fill(pageEnds, -1);
+            if (pages.length > 0) {
+                setStartPage(pages[0] + 1);
+                setEndPage(pages[pages.length - 1] + 1);
+            }
+        }
+
+        /**
+         * Strips the text from a document and cuts it into pages.
+         * @param document The document to strip
+         * @return The extracted text
+         * @throws IOException if PDFBox fails while stripping text from the document
+         */
+        ExtractedText strip(PDDocument document) throws IOException {
+            if (pages.length > 0) {
+                writeText(document, writer);
+            }
+            String text = writer.toString();
+            reportPagesThrough(pages.length - 1);
+            int[] offsets = new int[pages.length + 1];
+            for (int i = 0; i < pages.length; i++) {
+                offsets[i + 1] = pageEnds[i];
+            }
+            offsets[pages.length] = text.length();
+            return new ExtractedText(text, offsets, pages);
+        }
+
+        @Override
+        public void processPage(PDPage page) throws IOException {
+            int selected = Arrays.binarySearch(pages, getCurrentPageNo() - 1);
+            if (selected < 0) {
+                return;
+            }
+            super.processPage(page);
+            pageEnds[selected] = writer.getBuffer().length();
+            reportPagesThrough(selected);
+        }
+
+        /**
+         * Settles the end offsets of all pages up to and including the given one and passes them to the
+         * listener. Pages that were never processed (e.g. pages without a content stream) are given
+         * zero length.
+         * @param lastPage The index into the selection of the last page to report
+         * @throws IOException if the listener fails
+         */
+        private void reportPagesThrough(int lastPage) throws IOException {
+            StringBuffer buffer = writer.getBuffer();
+            for (; pagesReported <= lastPage; pagesReported++) {
+                int start = pagesReported == 0 ? 0 : pageEnds[pagesReported - 1];
+                if (pageEnds[pagesReported] == -1) {
+                    pageEnds[pagesReported] = start;
+                }
+                if (listener != null) {
+                    listener.pageExtracted(pages[pagesReported], buffer.substring(start, pageEnds[pagesReported]));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package PDFDiffFX;
+
+import de.redsix.pdfcompare.DiffImage;
+import de.redsix.pdfcompare.Exclusions;
+import de.redsix.pdfcompare.ImageWithDimension;
+import de.redsix.pdfcompare.PageDiffCalculator;
+import de.redsix.pdfcompare.PdfComparator;
+import de.redsix.pdfcompare.ResultCollector;
+import de.redsix.pdfcompare.env.Environment;
+import de.redsix.pdfcompare.env.SimpleEnvironment;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares pairs of pages graphically, on a pool of worker threads. Rendering and comparing the pages is by
+ * far the slowest part of a run, and every pair can be compared on its own.
+ * <p>
+ * Pages are rendered straight from loaded documents with PdfComparator's renderer and compared with its
+ * DiffImage, so the visual diffs look as they always have, but no page is saved into a PDF of its own and
+ * parsed again first. PDFBox documents are not safe to share between threads, so each worker renders from
+ * copies of its own, loaded on first use; a single worker renders on the calling thread from the documents
+ * already loaded. The rasters are what take the memory: a letter page at 300 DPI is 33 MB, and each
+ * comparison holds three (both pages and their difference). So a pair is only handed to a worker once the
+ * pairs in progress leave room for its rasters within an admission limit; a pair too large for the limit on
+ * its own waits until it can run alone. Results come back in the order of the pairs, whatever order the
+ * workers finish them in.
+ * <p>
+ * With a RasterCache, each page is looked up by its fingerprint before it is rendered, and rendered pages
+ * are stored, so a page seen by an earlier run (or earlier in this one) is never rendered twice.
+ * <p>
+ * Most pairs in a typical run are identical, and rendering them at full resolution only to find that out is
+ * most of the work. With screening, each pair is first rendered at a low resolution, where a page takes a
+ * small fraction of the time and memory, and its pixels compared. A pair is cleared as identical only if
+ * clearly within the tolerance, i.e. if fewer than half the tolerated share of pixels differ; the rest,
+ * including pairs close to the tolerance, are escalated: rendered again at full resolution and compared as
+ * without screening. A tolerance of 0 escalates every pair with a single differing pixel.
+ */
+class GraphicalDiffPool {
+
+    // rasters held by a comparison: both pages and their difference, at 4 bytes a pixel
+    private static final int RASTERS_PER_PAIR = 3;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final int workers;
+    private final MemoryUsageSetting workerMemory;
+    private final int admissionMB;
+    private final RasterCache cache;
+    // PdfComparator's defaults, e.g. 300 DPI
+    private final Environment environment = new SimpleEnvironment();
+    // the low-resolution screening pass (null when pairs are not screened), and the share of pixels that
+    // may differ for a pair to be taken as identical
+    private Environment screenEnvironment;
+    private double screenTolerance;
+    private final AtomicInteger screened = new AtomicInteger();
+    private final AtomicInteger escalated = new AtomicInteger();
+
+    /**
+     * @param workers The number of worker threads
+     * @param workerMemory How PDFBox should buffer each worker's copies of the documents; null loads them
+     *      like the main copies
+     * @param admissionMB The most memory the rasters of the comparisons in progress may take, in megabytes
+     * @param cache Where rendered pages are looked up and stored; null to render every page
+     */
+    GraphicalDiffPool(int workers, MemoryUsageSetting workerMemory, long admissionMB, RasterCache cache) {
+        this.workers = workers;
+        this.workerMemory = workerMemory;
+        this.admissionMB = (int) Math.max(1, Math.min(Integer.MAX_VALUE, admissionMB));
+        this.cache = cache;
+    }
+
+    /**
+     * Screens every pair at a low resolution before comparing it at full resolution.
+     * @param dpi The resolution to screen at
+     * @param tolerance The share of pixels, between 0 and 1, that may differ for a pair to be taken as
+     *      identical
+     */
+    void screen(int dpi, double tolerance) {
+        screenEnvironment = new SimpleEnvironment().setDPI(dpi);
+        screenTolerance = tolerance;
+    }
+
+    /**
+     * @return The number of pairs screened at low resolution
+     */
+    int screened() {
+        return screened.get();
+    }
+
+    /**
+     * @return The number of screened pairs that were escalated to full resolution
+     */
+    int escalated() {
+        return escalated.get();
+    }
+
+    /**
+     * @return The default admission limit: half of the most heap the JVM will use
+     */
+    static long defaultAdmissionMB() {
+        return Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024);
+    }
+
+    /**
+     * Compares pairs of pages.
+     * @param source1 The "expected" or "original" document
+     * @param source2 The "actual" document
+     * @param pairs The pairs to compare, as {page index in document 1, page index in document 2}
+     * @return For each pair in order, the visual diff, or null if the pages are identical
+     * @throws IOException if either document cannot be loaded
+     */
+    List<PDDocument> compare(DocumentSource source1, DocumentSource source2, List<int[]> pairs)
+            throws IOException {
+        PDDocument doc1 = source1.getDocument(), doc2 = source2.getDocument();
+        if (workers <= 1 || pairs.size() < 2) {
+            PageSource page1 = new PageSource(doc1), page2 = new PageSource(doc2);
+            List<PDDocument> results = new ArrayList<>();
+            for (int[] pair : pairs) {
+                results.add(graphicalDiffPage(page1, pair[0], page2, pair[1]));
+            }
+            return results;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Semaphore admission = new Semaphore(admissionMB);
+        Queue<PDDocument> workerDocs = new ConcurrentLinkedQueue<>();
+        ThreadLocal<PageSource[]> workerDoc = new ThreadLocal<>();
+        List<Future<PDDocument>> comparisons = new ArrayList<>();
+        List<PDDocument> results = new ArrayList<>();
+        boolean complete = false;
+        try {
+            for (int[] pair : pairs) {
+                int permits = Math.min(admissionMB, rasterMB(doc1, pair[0], doc2, pair[1]));
+                admission.acquire(permits);
+                comparisons.add(pool.submit(() -> {
+                    try {
+                        PageSource[] docs = workerDoc.get();
+                        if (docs == null) {
+                            PDDocument copy1 = load(source1);
+                            workerDocs.add(copy1);
+                            PDDocument copy2 = load(source2);
+                            workerDocs.add(copy2);
+                            docs = new PageSource[]{new PageSource(copy1), new PageSource(copy2)};
+                            workerDoc.set(docs);
+                        }
+                        return graphicalDiffPage(docs[0], pair[0], docs[1], pair[1]);
+                    } finally {
+                        admission.release(permits);
+                    }
+                }));
+            }
+            for (Future<PDDocument> comparison : comparisons) {
+                results.add(comparison.get());
+            }
+            complete = true;
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while comparing pages graphically", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Graphical comparison failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (PDDocument doc : workerDocs) {
+                doc.close();
+            }
+            if (!complete) {
+                closeFinished(comparisons);
+            }
+        }
+    }
+
+    /**
+     * Loads a worker's copy of a document.
+     */
+    private PDDocument load(DocumentSource source) throws IOException {
+        return workerMemory == null ? source.load() : source.load(workerMemory);
+    }
+
+    /**
+     * Generates a PDDocument containing the result of a visual diff operation. Elements new to doc2 are
+     * colored green; elements missing from doc2 are colored red.
+     * @param doc1 The "expected" or "original" document
+     * @param page1 The index of the page to compare in doc1
+     * @param doc2 The "actual" document
+     * @param page2 The index of the page to compare in doc2
+     * @return The visual diff, or null if the pages are identical
+     */
+    private PDDocument graphicalDiffPage(PageSource doc1, int page1, PageSource doc2, int page2) {
+        PDDocument result = null;
+        try {
+            byte[] digest1 = cacheKey(doc1, page1), digest2 = cacheKey(doc2, page2);
+            if (screenEnvironment != null) {
+                screened.incrementAndGet();
+                if (!screenDiffers(render(doc1, page1, digest1, screenEnvironment),
+                        render(doc2, page2, digest2, screenEnvironment))) {
+                    return null;
+                }
+                escalated.incrementAndGet();
+            }
+            PageDiff diff = new PageDiff();
+            new DiffImage(render(doc1, page1, digest1, environment), render(doc2, page2, digest2, environment),
+                    0, environment, new Exclusions(environment), diff).diffImages();
+            // only add if different
+            if (diff.calculator.differencesFound()) {
+                result = new PDDocument();
+                addImagePage(result, diff.image);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (result != null) {
+                try {
+                    result.close();
+                } catch (IOException ignored) {
+                    // nothing more to free
+                }
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decides from their low-resolution renderings whether a pair needs comparing at full resolution.
+     * @return true unless the pages are the same size and clearly within the tolerance
+     */
+    private boolean screenDiffers(ImageWithDimension image1, ImageWithDimension image2) {
+        BufferedImage pixels1 = image1.bufferedImage, pixels2 = image2.bufferedImage;
+        int width = pixels1.getWidth(), height = pixels1.getHeight();
+        if (width != pixels2.getWidth() || height != pixels2.getHeight()) {
+            return true;
+        }
+        // pairs at or above half the tolerance are too close to call at this resolution
+        long allowed = (long) Math.ceil(screenTolerance / 2 * width * height);
+        long differing = 0;
+        int[] row1 = new int[width], row2 = new int[width];
+        for (int y = 0; y < height; y++) {
+            pixels1.getRGB(0, y, width, 1, row1, 0, width);
+            pixels2.getRGB(0, y, width, 1, row2, 0, width);
+            for (int x = 0; x < width; x++) {
+                if (row1[x] != row2[x] && ++differing >= Math.max(1, allowed)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fingerprints a page for the raster cache.
+     * @return The page's digest, or null without a cache or if the page can't be digested, in which case
+     *      the page is rendered without the cache
+     */
+    private byte[] cacheKey(PageSource source, int pageIndex) {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            return source.digester.digest(source.doc.getPage(pageIndex));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Raster cache digest failed, rendering instead: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Renders a page, or takes it from the raster cache if it has been rendered before. The cache never
+     * changes the result: a page that can't be looked up is rendered, and one that can't be stored is
+     * still returned.
+     * @param source The document containing the page
+     * @param pageIndex The index of the page
+     * @param digest The page's digest, for the cache; null to render without the cache
+     * @param environment The resolution to render at
+     * @return The rendered page, with its size in points
+     * @throws IOException if the page cannot be rendered
+     */
+    private ImageWithDimension render(PageSource source, int pageIndex, byte[] digest, Environment environment)
+            throws IOException {
+        if (digest == null) {
+            return renderUnrotated(source.doc, pageIndex, environment);
+        }
+        ImageWithDimension image = null;
+        try {
+            image = cache.get(digest, environment.getDPI());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Raster cache look-up failed, rendering instead: " + e);
+        }
+        if (image == null) {
+            image = renderUnrotated(source.doc, pageIndex, environment);
+            try {
+                cache.put(digest, environment.getDPI(), image);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Raster cache store failed: " + e);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Renders a page with its rotation cleared, so that pages which differ only in rotation compare equal.
+     * The page's own rotation entry is put back afterwards. DifferenceCheck renders through here too, so
+     * that it agrees with the graphical report.
+     * @param doc The document containing the page
+     * @param pageIndex The index of the page
+     * @param environment The resolution to render at
+     * @return The rendered page, with its size in points
+     * @throws IOException if the page cannot be rendered
+     */
+    static ImageWithDimension renderUnrotated(PDDocument doc, int pageIndex, Environment environment)
+            throws IOException {
+        PDPage page = doc.getPage(pageIndex);
+        COSBase rotation = page.getCOSObject().getItem(COSName.ROTATE);
+        page.setRotation(0);
+        try {
+            return PdfComparator.renderPageAsImage(doc, new PDFRenderer(doc), pageIndex, environment);
+        } finally {
+            page.getCOSObject().setItem(COSName.ROTATE, rotation);
+        }
+    }
+
+    /**
+     * Adds a page to a document that shows an image over the whole page, as PdfComparator writes its results.
+     * @param doc The document to add the page to
+     * @param image The image, with the size of the page in points
+     * @throws IOException if the image cannot be encoded
+     */
+    private static void addImagePage(PDDocument doc, ImageWithDimension image) throws IOException {
+        PDPage page = new PDPage(new PDRectangle(image.width, image.height));
+        doc.addPage(page);
+        PDImageXObject xObject = LosslessFactory.createFromImage(doc, image.bufferedImage);
+        try (PDPageContentStream contents = new PDPageContentStream(doc, page)) {
+            contents.drawImage(xObject, 0, 0, image.width, image.height);
+        }
+    }
+
+    /**
+     * Estimates the memory the rasters of a comparison take. Pages are rendered unrotated, at their crop box.
+     * @return The estimate, in megabytes, rounded up
+     */
+    private int rasterMB(PDDocument doc1, int page1, PDDocument doc2, int page2) {
+        PDRectangle box1 = doc1.getPage(page1).getCropBox(), box2 = doc2.getPage(page2).getCropBox();
+        double scale = environment.getDPI() / 72.0;
+        double width = Math.max(box1.getWidth(), box2.getWidth()) * scale;
+        double height = Math.max(box1.getHeight(), box2.getHeight()) * scale;
+        double bytes = width * height * BYTES_PER_PIXEL * RASTERS_PER_PAIR;
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(bytes / (1024 * 1024)));
+    }
+
+    /**
+     * Closes the visual diffs of comparisons that finished before the run was abandoned.
+     */
+    private static void closeFinished(List<Future<PDDocument>> comparisons) {
+        for (Future<PDDocument> comparison : comparisons) {
+            if (!comparison.isDone() || comparison.isCancelled()) {
+                continue;
+            }
+            try {
+                PDDocument result = comparison.get();
+                if (result != null) {
+                    result.close();
+                }
+            } catch (InterruptedException | ExecutionException | IOException e) {
+                // nothing to close
+            }
+        }
+    }
+
+    /**
+     * A document that pages are rendered from, with the digester that fingerprints its pages for the cache.
+     * Like the document, the digester is only used by one thread.
+     */
+    private static class PageSource {
+        final PDDocument doc;
+        final PageFingerprints.Digester digester = new PageFingerprints.Digester();
+
+        PageSource(PDDocument doc) {
+            this.doc = doc;
+        }
+    }
+
+    /**
+     * Receives DiffImage's result for a single pair of pages.
+     */
+    private static class PageDiff implements ResultCollector {
+        PageDiffCalculator calculator;
+        ImageWithDimension image;
+
+        @Override
+        public void addPage(PageDiffCalculator calculator, int pageIndex, ImageWithDimension expected,
+                            ImageWithDimension actual, ImageWithDimension diff) {
+            this.calculator = calculator;
+            this.image = diff;
+        }
+
+        @Override
+        public void noPagesFound() {
+            // a single pair always has a page
+        }
+    }
+}
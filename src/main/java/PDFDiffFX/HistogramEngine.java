@@ -0,0 +1,121 @@
+package PDFDiffFX;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Histogram diff, as in JGit: count how often each line occurs in the first range, find the run of common
+ * lines built around the rarest line the ranges share, and split the ranges either side of it. Lines
+ * occurring more than MAX_CHAIN times are never used to anchor a split. Ranges with nothing usable in
+ * common fall back to Myers.
+ * <p>
+ * Unlike patience diff, this still finds anchors when no line is unique, e.g. between two copies of a
+ * repeated boilerplate paragraph.
+ */
+class HistogramEngine extends AnchoredLineEngine {
+
+    static final int MAX_CHAIN = 64;
+
+    /**
+     * @param dmp Diffs the blocks of changed lines
+     * @param words Whether changed lines are diffed a word at a time rather than a character at a time
+     */
+    HistogramEngine(diff_match_patch dmp, boolean words) {
+        super(dmp, words);
+    }
+
+    @Override
+    void diffLines(TextTokens tokens, diff_match_patch.Budget budget, TextTokens.Runs runs) {
+        int[] a = tokens.tokens1(), b = tokens.tokens2();
+        // occurrences of each token within the range of a being diffed, and the last of them (plus one);
+        // always all zero between ranges
+        int[] count = new int[tokens.uniqueCount()];
+        int[] last = new int[tokens.uniqueCount()];
+        // previous[i] is the previous occurrence in the range (plus one) of the token at a[i]
+        int[] previous = new int[a.length];
+
+        // an explicit stack rather than recursion, which could go as deep as there are lines
+        Deque<int[]> work = new ArrayDeque<>();
+        work.push(new int[]{DIFF, 0, a.length, 0, b.length});
+        while (!work.isEmpty()) {
+            int[] task = work.pop();
+            if (task[0] == EQUAL) {
+                runs.add(PackedDiff.EQUAL, task[1], task[2]);
+                continue;
+            }
+            int[] range = Arrays.copyOfRange(task, 1, 5);
+            int suffix = trim(a, b, range, runs);
+            work.push(new int[]{EQUAL, range[1], suffix});
+            int start1 = range[0], end1 = range[1], start2 = range[2], end2 = range[3];
+            if (start1 == end1 || start2 == end2) {
+                runs.add(PackedDiff.DELETE, start1, end1 - start1);
+                runs.add(PackedDiff.INSERT, start2, end2 - start2);
+                continue;
+            }
+
+            int[] region = findRegion(a, start1, end1, b, start2, end2, count, last, previous);
+            if (region == null) {
+                tokens.diff(start1, end1, start2, end2, budget, runs);
+                continue;
+            }
+            work.push(new int[]{DIFF, region[1], end1, region[3], end2});
+            work.push(new int[]{EQUAL, region[0], region[1] - region[0]});
+            work.push(new int[]{DIFF, start1, region[0], start2, region[2]});
+        }
+    }
+
+    /**
+     * Finds the common run of lines to split the ranges at: the one whose rarest line is rarest in a, and the
+     * longest of those.
+     * @return {start1, end1, start2, end2} of the run, or null if the ranges have nothing usable in common
+     */
+    private static int[] findRegion(int[] a, int start1, int end1, int[] b, int start2, int end2,
+                                    int[] count, int[] last, int[] previous) {
+        for (int i = start1; i < end1; i++) {
+            int token = a[i];
+            count[token]++;
+            previous[i] = last[token];
+            last[token] = i + 1;
+        }
+
+        int[] best = null;
+        int bestCount = MAX_CHAIN;
+        for (int j = start2; j < end2; ) {
+            int token = b[j];
+            int nextJ = j + 1;
+            if (count[token] == 0 || count[token] > bestCount) {
+                j = nextJ;
+                continue;
+            }
+            for (int i = last[token] - 1; i >= start1; i = previous[i] - 1) {
+                // grow the match at (i, j) as far as it goes both ways, noting its rarest line
+                int regionStart1 = i, regionStart2 = j, regionEnd1 = i + 1, regionEnd2 = j + 1;
+                int regionCount = count[token];
+                while (regionStart1 > start1 && regionStart2 > start2
+                        && a[regionStart1 - 1] == b[regionStart2 - 1]) {
+                    regionStart1--;
+                    regionStart2--;
+                    regionCount = Math.min(regionCount, count[a[regionStart1]]);
+                }
+                while (regionEnd1 < end1 && regionEnd2 < end2 && a[regionEnd1] == b[regionEnd2]) {
+                    regionCount = Math.min(regionCount, count[a[regionEnd1]]);
+                    regionEnd1++;
+                    regionEnd2++;
+                }
+                nextJ = Math.max(nextJ, regionEnd2);
+                if (best == null || best[3] - best[2] < regionEnd2 - regionStart2 || regionCount < bestCount) {
+                    best = new int[]{regionStart1, regionEnd1, regionStart2, regionEnd2};
+                    bestCount = regionCount;
+                }
+            }
+            j = nextJ;
+        }
+
+        for (int i = start1; i < end1; i++) {
+            count[a[i]] = 0;
+            last[a[i]] = 0;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,34 @@
+package PDFDiffFX;
+
+/**
+ * diff_match_patch's diff: a line-level pass to find the changed areas, then Myers bisection of each change,
+ * or a Myers diff of word tokens in word mode.
+ */
+class MyersEngine implements DiffEngine {
+
+    private final diff_match_patch dmp;
+    private final boolean words;
+
+    /**
+     * @param dmp The diff_match_patch instance to diff with
+     * @param words Whether to diff a word at a time rather than a character at a time
+     */
+    MyersEngine(diff_match_patch dmp, boolean words) {
+        this.dmp = dmp;
+        this.words = words;
+    }
+
+    @Override
+    public PackedDiff diff(String text1, String text2, diff_match_patch.Budget budget) {
+        if (words) {
+            TextTokens tokens = TextTokens.words(text1, text2);
+            return tokens.toPacked(tokens.diff(budget));
+        }
+        return PackedDiff.pack(text1, text2, dmp.diff_main(text1, text2, true, budget));
+    }
+
+    @Override
+    public boolean wordLevel() {
+        return words;
+    }
+}
@@ -1,5 +1,6 @@
 package PDFDiffFX;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 import java.io.File;
@@ -12,6 +13,45 @@ public class PDFDiff {
 
     String filename1, filename2, outFilePrefix, outDir;
     boolean dump = false, graphical = false;
+    // only report whether the files differ, through the exit status
+    boolean check = false;
+    // diff whole words rather than characters
+    boolean wordDiff = false;
+    // diff algorithm: myers, patience or histogram
+    String diffEngine = "myers";
+    // compare page fingerprints first, skipping page pairs that match
+    boolean fingerprints = true;
+    // pair pages by content rather than by position
+    boolean align = false;
+    // manifest of the previous run, whose page texts and diffs are reused (null when not re-diffing)
+    String manifestFile;
+    int threads = 1;
+    // threads for diffing large texts in parallel
+    int diffThreads = 1;
+    // threads comparing pages graphically
+    int graphicalThreads = 1;
+    // cap on the main memory of each graphical worker's copy of a document, in MB (-1 to load as the main copy)
+    long graphicalMemoryMB = -1;
+    // cap on the rasters of graphical comparisons in progress, in MB (-1 for half the heap)
+    long graphicalAdmissionMB = -1;
+    // resolution of the graphical screening pass (0 for no screening), and its tolerance in percent of pixels
+    int screenDpi = 0;
+    double screenTolerancePercent = 0;
+    // work budget per diff in edit-graph cells, in place of the time limit (0 keeps the time limit)
+    long diffBudget = 0;
+    // seconds after which every diff falls back to line by line (0 for no deadline)
+    long deadlineSeconds = 0;
+    // low-memory loading: cap on each document's main memory, in MB (-1 when not in low-memory mode)
+    long maxMainMemoryMB = -1;
+    String scratchDir;
+    // persistent text cache (disabled when cacheDir is null)
+    String cacheDir;
+    long cacheSizeMB = 512;
+    // persistent cache of rendered pages for the graphical diff (disabled when rasterCacheDir is null)
+    String rasterCacheDir;
+    long rasterCacheSizeMB = 1024;
+    // pages to compare in each document (null compares every page)
+    PageRange pages1, pages2;
 
     /**
      * Prints usage instructions. For debugging purposes.
@@ -21,8 +61,45 @@ public class PDFDiff {
                    "Usage: pdfDiff <file1> <file2> <dest>\n" +
                    "file1: the first of two files to compare\n" +
                    "file2: the second file to compare\n" +
-                   "dest: the path to the file to create as output\n" +
-                   "[-d]: dump the command-line report to a .txt file"
+                   "dest: the path to the file to create as output (not needed with --check)\n" +
+                   "[--check]: only find out whether the files differ, stopping at the first difference; exits\n" +
+                   "           with 0 if they are the same, 1 if they differ and 2 on error, writing no reports\n" +
+                   "           (with -g, pages with the same text are also compared as rendered)\n" +
+                   "[-d]: dump the command-line report to a .txt file\n" +
+                   "[-g]: also generate a graphical (visual) diff\n" +
+                   "[-gt <n>]: compare pages graphically on n threads (default 1); pages are still\n" +
+                   "           reported in order\n" +
+                   "[-gm <MB>]: keep at most MB megabytes of each graphical worker's copy of a document in\n" +
+                   "            memory, buffering the rest in a scratch file (see -s)\n" +
+                   "[-ga <MB>]: only start graphical comparisons while the rasters of those in progress fit\n" +
+                   "            in MB megabytes (default half the heap)\n" +
+                   "[-gs <dpi>]: screen page pairs at this low resolution first (e.g. 50), and only compare\n" +
+                   "             the pairs that differ at full resolution\n" +
+                   "[-gst <percent>]: share of pixels that may differ in screening for a pair to count as\n" +
+                   "                  identical (default 0); pairs over half of it are compared in full\n" +
+                   "[-w]: diff word by word, so that changed words are reported whole\n" +
+                   "[-e <engine>]: diff algorithm: myers (default), patience or histogram\n" +
+                   "[-a]: pair pages by content rather than position, for documents with pages inserted\n" +
+                   "      or removed (extracts both documents before diffing any page)\n" +
+                   "[-r <file>]: re-diff incrementally: reuse the page texts and diffs recorded in file by\n" +
+                   "             the previous run, and record this run's there\n" +
+                   "[-nf]: don't fingerprint pages to skip unchanged ones (saves parsing on text cache hits)\n" +
+                   "[-t <n>]: extract text using n threads (default 1)\n" +
+                   "[-dt <n>]: diff large texts in segments on n threads (default 1)\n" +
+                   "[-b <cells>]: limit each diff to this much work instead of 1 second, so that results\n" +
+                   "              don't depend on machine load (e.g. 200000000); page diffs get a share in\n" +
+                   "              proportion to their length, this much for about 4000 characters a side\n" +
+                   "[-dl <seconds>]: run deadline; diffs still running after it, and any later ones, are\n" +
+                   "                 done line by line and flagged as approximate\n" +
+                   "[-m <MB>]: low-memory mode; keep at most MB megabytes of each document in memory\n" +
+                   "           and buffer the rest in a scratch file (0 buffers everything on disk)\n" +
+                   "[-s <dir>]: directory for low-memory scratch files (implies -m 0 if -m not given)\n" +
+                   "[-c <dir>]: cache extracted text in dir, so known files are not parsed again\n" +
+                   "[-cs <MB>]: size limit of the text cache (default 512)\n" +
+                   "[-rc <dir>]: cache rendered pages in dir, so with -g known pages are not rendered again\n" +
+                   "[-rcs <MB>]: size limit of the raster cache (default 1024)\n" +
+                   "[--pages <range>]: only compare these pages, e.g. 1-20 or 3,5,9-12 or 40-\n" +
+                   "[--pages2 <range>]: pages of file2 to compare, if different from --pages"
                    );
     }
 
@@ -40,14 +117,202 @@ public class PDFDiff {
             argList.remove("-d");
         }
 
+        // flag for check mode
+        if (argList.contains("--check")) {
+            check = true;
+            argList.remove("--check");
+        }
+
         // flag for doing graphical diff
         if (argList.contains("-g")) {
             graphical = true;
             argList.remove("-g");
         }
 
+        // flag for word-level diffs
+        if (argList.contains("-w")) {
+            wordDiff = true;
+            argList.remove("-w");
+        }
+
+        // diff algorithm
+        String engineArg = takeOption(argList, "-e");
+        if (engineArg != null)
+            diffEngine = engineArg;
+
+        // flag for aligning pages by content
+        if (argList.contains("-a")) {
+            align = true;
+            argList.remove("-a");
+        }
+
+        // flag for skipping the page fingerprint pre-pass
+        if (argList.contains("-nf")) {
+            fingerprints = false;
+            argList.remove("-nf");
+        }
+
+        // manifest for incremental re-diffs, which relies on page fingerprints
+        manifestFile = takeOption(argList, "-r");
+        if (manifestFile != null && !fingerprints)
+            throw new IllegalArgumentException("-r needs page fingerprints, so cannot be used with -nf");
+
+        // number of threads used for text extraction
+        String threadArg = takeOption(argList, "-t");
+        if (threadArg != null) {
+            try {
+                threads = Integer.parseInt(threadArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid thread count: " + threadArg);
+            }
+        }
+
+        // number of threads for diffing large texts
+        String diffThreadArg = takeOption(argList, "-dt");
+        if (diffThreadArg != null) {
+            try {
+                diffThreads = Integer.parseInt(diffThreadArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid thread count: " + diffThreadArg);
+            }
+        }
+
+        // graphical comparison: threads, and memory per comparison and for all of them together
+        String graphicalThreadArg = takeOption(argList, "-gt");
+        if (graphicalThreadArg != null) {
+            try {
+                graphicalThreads = Integer.parseInt(graphicalThreadArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid thread count: " + graphicalThreadArg);
+            }
+            if (graphicalThreads < 1)
+                throw new IllegalArgumentException("Invalid thread count: " + graphicalThreadArg);
+        }
+        String graphicalMemoryArg = takeOption(argList, "-gm");
+        if (graphicalMemoryArg != null) {
+            try {
+                graphicalMemoryMB = Long.parseLong(graphicalMemoryArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid memory limit: " + graphicalMemoryArg);
+            }
+            if (graphicalMemoryMB < 0)
+                throw new IllegalArgumentException("Invalid memory limit: " + graphicalMemoryArg);
+        }
+        String admissionArg = takeOption(argList, "-ga");
+        if (admissionArg != null) {
+            try {
+                graphicalAdmissionMB = Long.parseLong(admissionArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid memory limit: " + admissionArg);
+            }
+            if (graphicalAdmissionMB <= 0)
+                throw new IllegalArgumentException("Invalid memory limit: " + admissionArg);
+        }
+
+        // low-resolution screening for the graphical diff
+        String screenDpiArg = takeOption(argList, "-gs");
+        if (screenDpiArg != null) {
+            try {
+                screenDpi = Integer.parseInt(screenDpiArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid resolution: " + screenDpiArg);
+            }
+            if (screenDpi <= 0)
+                throw new IllegalArgumentException("Invalid resolution: " + screenDpiArg);
+        }
+        String screenToleranceArg = takeOption(argList, "-gst");
+        if (screenToleranceArg != null) {
+            try {
+                screenTolerancePercent = Double.parseDouble(screenToleranceArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid tolerance: " + screenToleranceArg);
+            }
+            if (!(screenTolerancePercent >= 0 && screenTolerancePercent <= 100))
+                throw new IllegalArgumentException("Invalid tolerance: " + screenToleranceArg);
+            if (screenDpi == 0)
+                throw new IllegalArgumentException("-gst sets the screening tolerance, so needs -gs");
+        }
+
+        // deterministic work budget for each diff
+        String budgetArg = takeOption(argList, "-b");
+        if (budgetArg != null) {
+            try {
+                diffBudget = Long.parseLong(budgetArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid diff budget: " + budgetArg);
+            }
+            if (diffBudget <= 0)
+                throw new IllegalArgumentException("Invalid diff budget: " + budgetArg);
+        }
+
+        // deadline for the whole run
+        String deadlineArg = takeOption(argList, "-dl");
+        if (deadlineArg != null) {
+            try {
+                deadlineSeconds = Long.parseLong(deadlineArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid deadline: " + deadlineArg);
+            }
+            if (deadlineSeconds <= 0)
+                throw new IllegalArgumentException("Invalid deadline: " + deadlineArg);
+        }
+
+        // low-memory loading
+        String memoryArg = takeOption(argList, "-m");
+        if (memoryArg != null) {
+            try {
+                maxMainMemoryMB = Long.parseLong(memoryArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid memory limit: " + memoryArg);
+            }
+            if (maxMainMemoryMB < 0)
+                throw new IllegalArgumentException("Invalid memory limit: " + memoryArg);
+        }
+        scratchDir = takeOption(argList, "-s");
+        if (scratchDir != null && maxMainMemoryMB < 0)
+            maxMainMemoryMB = 0;
+
+        // text cache
+        cacheDir = takeOption(argList, "-c");
+        String cacheSizeArg = takeOption(argList, "-cs");
+        if (cacheSizeArg != null) {
+            try {
+                cacheSizeMB = Long.parseLong(cacheSizeArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid cache size: " + cacheSizeArg);
+            }
+            if (cacheSizeMB < 0)
+                throw new IllegalArgumentException("Invalid cache size: " + cacheSizeArg);
+        }
+
+        // raster cache
+        rasterCacheDir = takeOption(argList, "-rc");
+        String rasterCacheSizeArg = takeOption(argList, "-rcs");
+        if (rasterCacheSizeArg != null) {
+            try {
+                rasterCacheSizeMB = Long.parseLong(rasterCacheSizeArg);
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid cache size: " + rasterCacheSizeArg);
+            }
+            if (rasterCacheSizeMB < 0)
+                throw new IllegalArgumentException("Invalid cache size: " + rasterCacheSizeArg);
+        }
+
+        // page selection
+        String pagesArg = takeOption(argList, "--pages");
+        String pages2Arg = takeOption(argList, "--pages2");
+        if (pagesArg != null)
+            pages1 = pages2 = PageRange.parse(pagesArg);
+        if (pages2Arg != null)
+            pages2 = PageRange.parse(pages2Arg);
+
+        if (argList.size() < 2)
+            throw new IllegalArgumentException("Missing file arguments");
         filename1 = argList.get(0);
         filename2 = argList.get(1);
+        // check mode writes nothing, so needs no destination
+        if (check)
+            return;
         outDir = argList.get(2);
         File od = new File(outDir);
         if (!od.exists())
@@ -57,7 +322,67 @@ public class PDFDiff {
         outFilePrefix = outDir + "/" + pathComponents[pathComponents.length - 1];
     }
 
-    // TODO: make configurable by page range
+    /**
+     * Describes the settings that affect the result of a page diff, so that diffs recorded in a run manifest
+     * under other settings are not reused.
+     * @return The diff settings
+     */
+    private String diffSettings() {
+        return diffEngine + (wordDiff ? "/words" : "/chars") + "/budget-" + diffBudget + "/threads-" + diffThreads
+                + "/pages-" + DiffScheduler.REFERENCE_LENGTH;
+    }
+
+    /**
+     * Removes an option that takes a value, along with its value, from the argument list.
+     * @param argList The remaining input arguments
+     * @param option The option to look for, e.g. "-t"
+     * @return The option's value, or null if the option was not supplied
+     */
+    private String takeOption(List<String> argList, String option) {
+        int i = argList.indexOf(option);
+        if (i == -1) {
+            return null;
+        }
+        if (i + 1 >= argList.size() || argList.get(i + 1) == null) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        argList.remove(i);
+        return argList.remove(i);
+    }
+
+    /**
+     * Runs the check mode, which compares the files only as far as needed to tell whether they differ and
+     * generates no reports. The first difference found is printed.
+     * @param args The input arguments, including --check
+     * @return The exit status: 0 if the files are the same, 1 if they differ, 2 if they could not be compared
+     */
+    private int check(String[] args) {
+        try {
+            processArgs(args);
+            MemoryUsageSetting memoryUsage = null;
+            if (maxMainMemoryMB >= 0) {
+                File scratch = scratchDir == null ? null : new File(scratchDir);
+                memoryUsage = DocumentSource.lowMemory(maxMainMemoryMB, scratch);
+            }
+            try (DocumentSource source1 = new DocumentSource(new File(filename1), memoryUsage);
+                 DocumentSource source2 = new DocumentSource(new File(filename2), memoryUsage)) {
+                DifferenceCheck check = new DifferenceCheck(fingerprints, graphical);
+                if (check.differ(source1, pages1, source2, pages2)) {
+                    System.out.println("Files differ: " + check.difference());
+                    return DifferenceCheck.DIFFERENT;
+                }
+                return DifferenceCheck.SAME;
+            }
+        } catch (IOException _ioe) {
+            System.out.println("Could not compare files: " + _ioe);
+            return DifferenceCheck.ERROR;
+        } catch (IllegalArgumentException _iae) {
+            System.out.println(_iae.getMessage());
+            printUsage();
+            return DifferenceCheck.ERROR;
+        }
+    }
+
     // TODO: add .ini file to configure settings, including excluded regions
     //      maybe then add toolbar item to open/configure these options
     //      maybe add option, when summary comes back, to say "ignore diffs in this region next time"
@@ -69,54 +394,159 @@ public class PDFDiff {
     // TODO: solve summary window sizing issue
     // TODO: warn before overwriting files/folder
     public static void main(String[] args) {
+        long started = System.currentTimeMillis();
         PDFDiff engine = new PDFDiff();
 
+        if (Arrays.asList(args).contains("--check")) {
+            System.exit(engine.check(args));
+        }
+
         if (args.length < 3) {
             engine.printUsage();
             return;
         }
 
+        ParallelDiffEngine parallelEngine = null;
         try {
             engine.processArgs(args);
             ReportTool reportTool = new ReportTool(engine.outFilePrefix);
+            reportTool.dmp.Diff_Budget = engine.diffBudget;
+            if (engine.deadlineSeconds > 0)
+                reportTool.scheduler = new DiffScheduler(reportTool.dmp, started + engine.deadlineSeconds * 1000);
+            reportTool.engine = DiffEngine.create(engine.diffEngine, reportTool.dmp, engine.wordDiff);
+            if (engine.diffThreads > 1)
+                reportTool.engine = parallelEngine = new ParallelDiffEngine(reportTool.engine, engine.diffThreads);
 
-            // open documents
-            File file1 = new File(engine.filename1);
-            try (PDDocument doc1 = PDDocument.load(file1)) {
-                File file2 = new File(engine.filename2);
-                try (PDDocument doc2 = PDDocument.load(file2)) {
+            // how documents are loaded and where their text comes from
+            File scratch = engine.scratchDir == null ? null : new File(engine.scratchDir);
+            MemoryUsageSetting memoryUsage = null;
+            if (engine.maxMainMemoryMB >= 0) {
+                memoryUsage = DocumentSource.lowMemory(engine.maxMainMemoryMB, scratch);
+            }
+            MemoryUsageSetting graphicalMemory = null;
+            if (engine.graphicalMemoryMB >= 0) {
+                graphicalMemory = DocumentSource.lowMemory(engine.graphicalMemoryMB, scratch);
+            }
+            long admissionMB = engine.graphicalAdmissionMB > 0 ? engine.graphicalAdmissionMB
+                    : GraphicalDiffPool.defaultAdmissionMB();
+            RasterCache rasterCache = engine.rasterCacheDir == null ? null
+                    : new RasterCache(new File(engine.rasterCacheDir), engine.rasterCacheSizeMB * 1024 * 1024);
+            reportTool.graphicalPool =
+                    new GraphicalDiffPool(engine.graphicalThreads, graphicalMemory, admissionMB, rasterCache);
+            if (engine.screenDpi > 0)
+                reportTool.graphicalPool.screen(engine.screenDpi, engine.screenTolerancePercent / 100);
+            TextCache cache = engine.cacheDir == null ? null
+                    : new TextCache(new File(engine.cacheDir), engine.cacheSizeMB * 1024 * 1024);
+            TextExtractor extractor = new TextExtractor(engine.threads, cache);
 
-                    // generate whole-document comparison
-                    reportTool.generateWholeTextualDiff(doc1, doc2);
+            // documents are only parsed once something needs them
+            try (DocumentSource source1 = new DocumentSource(new File(engine.filename1), memoryUsage);
+                 DocumentSource source2 = new DocumentSource(new File(engine.filename2), memoryUsage)) {
 
-                    // compare page-by-page
-                    List<PDDocument> file1Pages = reportTool.pdfToPages(doc1);
-                    List<PDDocument> file2Pages = reportTool.pdfToPages(doc2);
+                // identical files need no comparison at all
+                if (engine.pages1 == engine.pages2 && Arrays.equals(source1.sha256(), source2.sha256())) {
+                    reportTool.showIdenticalSummary(engine.dump);
+                    return;
+                }
 
-                    for (PDDocument page : file1Pages) {
-                        page.getPage(0).setRotation(0);
+                RunStats stats = reportTool.stats;
+                PageFingerprints fingerprints = null;
+                PageAlignment alignment = null;
+                ExtractedText text1, text2;
+                RunManifest manifest = engine.manifestFile == null ? null
+                        : RunManifest.load(new File(engine.manifestFile), engine.diffSettings());
+                if (engine.align || manifest != null) {
+                    // both documents' text is needed before any page is diffed, either to pair pages by content
+                    // or because the manifest already holds some of it
+                    int[] pages1 = null, pages2 = null;
+                    byte[][] digests1 = null, digests2 = null;
+                    if (engine.fingerprints) {
+                        PDDocument doc1 = source1.getDocument(), doc2 = source2.getDocument();
+                        pages1 = PageRange.resolve(engine.pages1, doc1.getNumberOfPages());
+                        pages2 = PageRange.resolve(engine.pages2, doc2.getNumberOfPages());
+                        digests1 = PageFingerprints.digestPages(doc1, pages1);
+                        digests2 = PageFingerprints.digestPages(doc2, pages2);
                     }
-                    for (PDDocument page : file2Pages) {
-                        page.getPage(0).setRotation(0);
+                    if (manifest != null) {
+                        text1 = extractor.extract(source1, engine.pages1, pages1, digests1, manifest);
+                        text2 = extractor.extract(source2, engine.pages2, pages2, digests2, manifest);
+                    } else {
+                        text1 = extractor.extract(source1, engine.pages1, null, null);
+                        text2 = extractor.extract(source2, engine.pages2, null, null);
                     }
-
-                    // compare graphically
-                    List<Integer> graphicalDiffPageNums = null;
-                    if (engine.graphical) {
-                        graphicalDiffPageNums = reportTool.generatePaginatedGraphicalDiff(file1Pages, file2Pages);
+                    if (engine.align) {
+                        alignment = PageAlignment.bySimilarity(text1, text2);
+                        stats.unpairedPages1 = text1.pageCount() - alignment.pairCount();
+                        stats.unpairedPages2 = text2.pageCount() - alignment.pairCount();
+                    } else {
+                        alignment = PageAlignment.byPosition(text1.pageCount(), text2.pageCount());
                     }
+                    if (engine.fingerprints) {
+                        fingerprints = PageFingerprints.compare(digests1, digests2, pages2, alignment);
+                        stats.unchangedPages = fingerprints.unchangedCount();
+                    }
+                    reportTool.generateAlignedTextualDiff(text1, text2, alignment, fingerprints, manifest);
+                    if (manifest != null) {
+                        manifest.save();
+                        stats.reusedPageTexts = manifest.textHits();
+                        stats.reusedPageDiffs = manifest.diffHits();
+                    }
+                } else {
+                    // find the page pairs that cannot differ, so that they are neither diffed nor rendered
+                    if (engine.fingerprints) {
+                        PDDocument doc1 = source1.getDocument(), doc2 = source2.getDocument();
+                        fingerprints = PageFingerprints.compare(
+                                doc1, PageRange.resolve(engine.pages1, doc1.getNumberOfPages()),
+                                doc2, PageRange.resolve(engine.pages2, doc2.getNumberOfPages()));
+                        stats.unchangedPages = fingerprints.unchangedCount();
+                    }
+
+                    // compare page-by-page; each document's text is extracted once here and shared
+                    // with every other textual report
+                    ExtractedText[] texts = reportTool.generatePaginatedTextualDiff(
+                            source1, engine.pages1, source2, engine.pages2, fingerprints, extractor);
+                    text1 = texts[0];
+                    text2 = texts[1];
+                }
 
-                    // compare textually
-                    reportTool.generatePaginatedTextualDiff(file1Pages, file2Pages);
+                // generate whole-document comparison
+                reportTool.generateWholeTextualDiff(text1, text2);
 
-                    // generate summary
-                    reportTool.showSummary(doc1, doc2, graphicalDiffPageNums, engine.dump);
+                // compare graphically
+                List<Integer> graphicalDiffPageNums = null;
+                if (engine.graphical) {
+                    PDDocument doc1 = source1.getDocument(), doc2 = source2.getDocument();
+                    int[] pages1 = PageRange.resolve(engine.pages1, doc1.getNumberOfPages());
+                    int[] pages2 = PageRange.resolve(engine.pages2, doc2.getNumberOfPages());
+                    if (alignment == null) {
+                        alignment = PageAlignment.byPosition(pages1.length, pages2.length);
+                    }
+                    graphicalDiffPageNums = reportTool.generatePaginatedGraphicalDiff(
+                            source1, pages1, source2, pages2, alignment, fingerprints);
+                    if (rasterCache != null) {
+                        stats.rasterCacheHits = rasterCache.hits();
+                        stats.rasterCacheMisses = rasterCache.misses();
+                    }
+                    if (engine.screenDpi > 0) {
+                        stats.screenedPairs = reportTool.graphicalPool.screened();
+                        stats.escalatedPairs = reportTool.graphicalPool.escalated();
+                    }
                 }
+
+                // generate summary
+                reportTool.showSummary(text1, text2, graphicalDiffPageNums, stats, engine.dump);
             }
         } catch (IOException _ioe) {
             AlertBox.display("File error", "Could not open files. Consult developer's console.");
             System.out.println("Could not open files");
             _ioe.printStackTrace();
+        } catch (IllegalArgumentException _iae) {
+            System.out.println(_iae.getMessage());
+            engine.printUsage();
+        } finally {
+            // the GUI runs a comparison per click, so the diff threads must not outlive the run
+            if (parallelEngine != null)
+                parallelEngine.close();
         }
     }
 }
@@ -0,0 +1,799 @@
+package PDFDiffFX;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A diff held as a packed array of (operation, start, length) triples pointing into the two texts it was
+ * computed from, instead of a LinkedList of Diff objects that each own a substring. A whole-document diff
+ * has hundreds of thousands of hunks; packed, they take 12 bytes each and no objects at all.
+ * <p>
+ * The start of an EQUAL or DELETE is an offset into text1 and the start of an INSERT an offset into text2.
+ * Hunks always cover both texts in order, so every cleanup that diff_match_patch does by splicing strings
+ * together can be done here by moving the ends of ranges: the text either side of a boundary is always
+ * contiguous in the text it came from. The cleanups below port diff_match_patch's and give the same
+ * result; the text itself is only read, never copied, until the diff is formatted.
+ * <p>
+ * The diff engines produce packed diffs. Line and word diffs (TextTokens) are packed straight from their
+ * runs of tokens; only diff_match_patch's character diffs, from the myers engine and for the changed lines
+ * within the anchored engines, are built as Diffs and packed afterwards.
+ */
+class PackedDiff {
+
+    // operation codes, matching the ordinals of diff_match_patch.Operation
+    static final int DELETE = 0;
+    static final int INSERT = 1;
+    static final int EQUAL = 2;
+    // an equality that the semantic cleanup has turned into a deletion and an insertion; only ever present
+    // between the first pass of cleanupSemantic and the expansion that follows it
+    private static final int SPLIT = 3;
+
+    private static final int STRIDE = 3;
+
+    private static final Pattern BLANKLINEEND = Pattern.compile("\\n\\r?\\n\\Z", Pattern.DOTALL);
+
+    private final String text1;
+    private final String text2;
+    private int[] data;
+    private int size = 0;
+
+    /**
+     * Creates an empty diff of two texts.
+     * @param text1 The old text
+     * @param text2 The new text
+     */
+    PackedDiff(String text1, String text2) {
+        this.text1 = text1;
+        this.text2 = text2;
+        this.data = new int[STRIDE * 16];
+    }
+
+    /**
+     * Packs the output of diff_match_patch. Hunks are located by their position in the list, not by
+     * searching for their text.
+     * @param text1 The old text
+     * @param text2 The new text
+     * @param diffs The diff of the two texts
+     * @return The packed diff
+     */
+    static PackedDiff pack(String text1, String text2, List<diff_match_patch.Diff> diffs) {
+        PackedDiff packed = new PackedDiff(text1, text2);
+        int pos1 = 0, pos2 = 0;
+        for (diff_match_patch.Diff d : diffs) {
+            int length = d.text.length();
+            switch (d.operation) {
+                case DELETE:
+                    packed.add(DELETE, pos1, length);
+                    pos1 += length;
+                    break;
+                case INSERT:
+                    packed.add(INSERT, pos2, length);
+                    pos2 += length;
+                    break;
+                case EQUAL:
+                    packed.add(EQUAL, pos1, length);
+                    pos1 += length;
+                    pos2 += length;
+                    break;
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Unpacks the diff into diff_match_patch's representation.
+     * @return A list of Diff objects
+     */
+    LinkedList<diff_match_patch.Diff> unpack() {
+        LinkedList<diff_match_patch.Diff> diffs = new LinkedList<>();
+        diff_match_patch.Operation[] operations = diff_match_patch.Operation.values();
+        for (int i = 0; i < size; i++) {
+            diffs.add(new diff_match_patch.Diff(operations[operation(i)], text(i)));
+        }
+        return diffs;
+    }
+
+    /**
+     * Appends a hunk.
+     * @param operation DELETE, INSERT or EQUAL
+     * @param start The offset of the hunk's text in text2 for an INSERT, otherwise in text1
+     * @param length The length of the hunk's text
+     */
+    void add(int operation, int start, int length) {
+        if (STRIDE * (size + 1) > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[STRIDE * size] = operation;
+        data[STRIDE * size + 1] = start;
+        data[STRIDE * size + 2] = length;
+        size++;
+    }
+
+    /**
+     * Appends a hunk, merging it into the last one if they have the same operation. Consecutive hunks of the
+     * same operation are next to each other in their text, so merging only lengthens the last one. Empty
+     * hunks are dropped.
+     * @param operation DELETE, INSERT or EQUAL
+     * @param start The offset of the hunk's text in text2 for an INSERT, otherwise in text1
+     * @param length The length of the hunk's text
+     */
+    void append(int operation, int start, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (size > 0 && operation(size - 1) == operation) {
+            data[STRIDE * (size - 1) + 2] += length;
+        } else {
+            add(operation, start, length);
+        }
+    }
+
+    /**
+     * Appends the hunks of a diff of parts of this diff's texts, merging as append(int, int, int) does.
+     * @param diff The diff of text1.substring(offset1, ...) and text2.substring(offset2, ...)
+     * @param offset1 Where the other diff's text1 starts in this diff's text1
+     * @param offset2 Where the other diff's text2 starts in this diff's text2
+     */
+    void append(PackedDiff diff, int offset1, int offset2) {
+        for (int i = 0; i < diff.size; i++) {
+            int operation = diff.operation(i);
+            append(operation, diff.start(i) + (operation == INSERT ? offset2 : offset1), diff.length(i));
+        }
+    }
+
+    /**
+     * @return The number of hunks
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param i The index of a hunk
+     * @return DELETE, INSERT or EQUAL
+     */
+    int operation(int i) {
+        return data[STRIDE * i];
+    }
+
+    /**
+     * @param i The index of a hunk
+     * @return The offset of the hunk's text in {@link #source(int)}
+     */
+    int start(int i) {
+        return data[STRIDE * i + 1];
+    }
+
+    /**
+     * @param i The index of a hunk
+     * @return The length of the hunk's text
+     */
+    int length(int i) {
+        return data[STRIDE * i + 2];
+    }
+
+    /**
+     * @param i The index of a hunk
+     * @return The text the hunk points into: text2 for an insertion, otherwise text1
+     */
+    String source(int i) {
+        return operation(i) == INSERT ? text2 : text1;
+    }
+
+    /**
+     * @param i The index of a hunk
+     * @return A copy of the hunk's text
+     */
+    String text(int i) {
+        return source(i).substring(start(i), start(i) + length(i));
+    }
+
+    /**
+     * Converts the diff into an HTML report, exactly as diff_match_patch.diff_prettyHtml does.
+     * @return HTML representation
+     */
+    String prettyHtml() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            switch (operation(i)) {
+                case INSERT:
+                    html.append("<ins style=\"background:#e6ffe6;\">");
+                    appendEscaped(html, i);
+                    html.append("</ins>");
+                    break;
+                case DELETE:
+                    html.append("<del style=\"background:#ffe6e6;\">");
+                    appendEscaped(html, i);
+                    html.append("</del>");
+                    break;
+                case EQUAL:
+                    html.append("<span>");
+                    appendEscaped(html, i);
+                    html.append("</span>");
+                    break;
+            }
+        }
+        return html.toString();
+    }
+
+    private void appendEscaped(StringBuilder html, int i) {
+        String source = source(i);
+        for (int j = start(i), end = j + length(i); j < end; j++) {
+            char c = source.charAt(j);
+            switch (c) {
+                case '&':
+                    html.append("&amp;");
+                    break;
+                case '<':
+                    html.append("&lt;");
+                    break;
+                case '>':
+                    html.append("&gt;");
+                    break;
+                case '\n':
+                    html.append("&para;<br>");
+                    break;
+                default:
+                    html.append(c);
+            }
+        }
+    }
+
+    /**
+     * Reduces the number of edits by eliminating semantically trivial equalities.
+     * See diff_match_patch.diff_cleanupSemantic.
+     */
+    void cleanupSemantic() {
+        if (size == 0) {
+            return;
+        }
+        boolean changes = false;
+        // indices of equalities, most recent last
+        int[] equalities = new int[16];
+        int equalityCount = 0;
+        int lastEquality = -1; // always equal to the top of equalities, or -1
+        // number of characters that changed prior to the equality
+        int length_insertions1 = 0;
+        int length_deletions1 = 0;
+        // number of characters that changed after the equality
+        int length_insertions2 = 0;
+        int length_deletions2 = 0;
+
+        // diff_match_patch rescans hunk by hunk from the last safe equality after every elimination, which is
+        // quadratic in a long run of small equalities. Everything between that equality and the furthest
+        // hunk reached is either an edit or one of at most a couple of equalities still standing, and the
+        // elimination test only gets easier to pass as edits pile up, so the rescan can take each run of
+        // edits at once using running totals. The totals count every equality as both an insertion and a
+        // deletion, which is what it is once split, and runs never span an equality that isn't split.
+        int[] insertedBefore = new int[size + 1];
+        int[] deletedBefore = new int[size + 1];
+        // the equalities not (yet) split, as a linked list with size as both head and tail
+        int[] nextEquality = new int[size + 1];
+        int[] previousEquality = new int[size + 1];
+        int tail = size;
+        for (int i = 0; i < size; i++) {
+            int op = operation(i);
+            insertedBefore[i + 1] = insertedBefore[i] + (op != DELETE ? length(i) : 0);
+            deletedBefore[i + 1] = deletedBefore[i] + (op != INSERT ? length(i) : 0);
+            if (op == EQUAL) {
+                nextEquality[tail] = i;
+                previousEquality[i] = tail;
+                tail = i;
+            }
+        }
+        nextEquality[tail] = size;
+        previousEquality[size] = tail;
+        int reached = -1; // the furthest hunk scanned so far
+
+        int pointer = 0;
+        while (pointer < size) {
+            int op = operation(pointer);
+            if (op == EQUAL) {
+                if (equalityCount == equalities.length) {
+                    equalities = Arrays.copyOf(equalities, equalityCount * 2);
+                }
+                equalities[equalityCount++] = pointer;
+                length_insertions1 = length_insertions2;
+                length_deletions1 = length_deletions2;
+                length_insertions2 = 0;
+                length_deletions2 = 0;
+                lastEquality = pointer;
+                reached = Math.max(reached, pointer);
+                pointer++;
+            } else {
+                // an insertion, a deletion, or an equality already split into both; when rescanning, the
+                // whole run of them up to the next equality or the furthest hunk reached
+                int end = pointer;
+                if (pointer < reached) {
+                    int next = nextEquality[lastEquality == -1 ? size : lastEquality];
+                    end = Math.min(reached, next - 1);
+                }
+                length_insertions2 += insertedBefore[end + 1] - insertedBefore[pointer];
+                length_deletions2 += deletedBefore[end + 1] - deletedBefore[pointer];
+                reached = Math.max(reached, end);
+                // eliminate an equality that is smaller or equal to the edits on both sides of it
+                if (lastEquality != -1
+                        && length(lastEquality) <= Math.max(length_insertions1, length_deletions1)
+                        && length(lastEquality) <= Math.max(length_insertions2, length_deletions2)) {
+                    // the equality becomes a deletion followed by an insertion of the same text
+                    data[STRIDE * lastEquality] = SPLIT;
+                    nextEquality[previousEquality[lastEquality]] = nextEquality[lastEquality];
+                    previousEquality[nextEquality[lastEquality]] = previousEquality[lastEquality];
+                    equalityCount--; // throw away the equality we just split
+                    if (equalityCount > 0) {
+                        // throw away the previous equality (it needs to be reevaluated)
+                        equalityCount--;
+                    }
+                    length_insertions1 = 0; // reset the counters
+                    length_insertions2 = 0;
+                    length_deletions1 = 0;
+                    length_deletions2 = 0;
+                    lastEquality = -1;
+                    changes = true;
+                    // rescan from the last safe equality, which (as in diff_match_patch) is pushed again, or
+                    // from the start
+                    pointer = equalityCount > 0 ? equalities[equalityCount - 1] : 0;
+                    continue;
+                }
+                pointer = end + 1;
+            }
+        }
+
+        // normalize the diff
+        if (changes) {
+            expandSplits();
+            cleanupMerge();
+        }
+        cleanupSemanticLossless();
+
+        // find any overlaps between deletions and insertions
+        // e.g: <del>abcxxx</del><ins>xxxdef</ins>
+        //   -> <del>abc</del>xxx<ins>def</ins>
+        // e.g: <del>xxxabc</del><ins>defxxx</ins>
+        //   -> <ins>def</ins>xxx<del>abc</del>
+        // only extract an overlap if it is as big as the edit ahead or behind it
+        int[] old = data;
+        int oldSize = size;
+        data = new int[old.length + STRIDE * 16];
+        size = 0;
+        int k = 0;
+        while (k < oldSize) {
+            if (k + 1 < oldSize && old[STRIDE * k] == DELETE && old[STRIDE * (k + 1)] == INSERT) {
+                int deletion = old[STRIDE * k + 1], deletionLength = old[STRIDE * k + 2];
+                int insertion = old[STRIDE * (k + 1) + 1], insertionLength = old[STRIDE * (k + 1) + 2];
+                int overlap_length1 = commonOverlap(text1, deletion, deletionLength, text2, insertion, insertionLength);
+                int overlap_length2 = commonOverlap(text2, insertion, insertionLength, text1, deletion, deletionLength);
+                if (overlap_length1 >= overlap_length2) {
+                    if (overlap_length1 >= deletionLength / 2.0 || overlap_length1 >= insertionLength / 2.0) {
+                        // overlap found: insert an equality and trim the surrounding edits
+                        add(DELETE, deletion, deletionLength - overlap_length1);
+                        add(EQUAL, deletion + deletionLength - overlap_length1, overlap_length1);
+                        add(INSERT, insertion + overlap_length1, insertionLength - overlap_length1);
+                    } else {
+                        add(DELETE, deletion, deletionLength);
+                        add(INSERT, insertion, insertionLength);
+                    }
+                } else {
+                    if (overlap_length2 >= deletionLength / 2.0 || overlap_length2 >= insertionLength / 2.0) {
+                        // reverse overlap found: insert an equality and swap and trim the surrounding edits
+                        add(INSERT, insertion, insertionLength - overlap_length2);
+                        add(EQUAL, deletion, overlap_length2);
+                        add(DELETE, deletion + overlap_length2, deletionLength - overlap_length2);
+                    } else {
+                        add(DELETE, deletion, deletionLength);
+                        add(INSERT, insertion, insertionLength);
+                    }
+                }
+                k += 2;
+            } else {
+                add(old[STRIDE * k], old[STRIDE * k + 1], old[STRIDE * k + 2]);
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Replaces each split equality with a deletion and an insertion of the same text.
+     */
+    private void expandSplits() {
+        int[] old = data;
+        int oldSize = size;
+        data = new int[old.length * 2];
+        size = 0;
+        int pos2 = 0;
+        for (int i = 0; i < oldSize; i++) {
+            int op = old[STRIDE * i], start = old[STRIDE * i + 1], length = old[STRIDE * i + 2];
+            if (op == SPLIT) {
+                add(DELETE, start, length);
+                add(INSERT, pos2, length);
+            } else {
+                add(op, start, length);
+            }
+            if (op != DELETE) {
+                pos2 += length;
+            }
+        }
+    }
+
+    /**
+     * Looks for single edits surrounded on both sides by equalities which can be shifted sideways to align
+     * the edit to a word boundary, e.g. The c<ins>at c</ins>ame. -> The <ins>cat </ins>came.
+     * See diff_match_patch.diff_cleanupSemanticLossless.
+     */
+    void cleanupSemanticLossless() {
+        boolean[] removed = new boolean[size];
+        boolean anyRemoved = false;
+        int prev = 0, cur = 1, next = 2;
+        // intentionally ignore the first and last element (don't need checking)
+        while (next < size) {
+            if (operation(prev) == EQUAL && operation(next) == EQUAL) {
+                // this is a single edit surrounded by equalities
+                String edit = source(cur);
+                int equality1Length = length(prev);
+                int editStart = start(cur), editLength = length(cur);
+                int equality2Start = start(next), equality2Length = length(next);
+                int equality1Start = start(prev);
+
+                // first, shift the edit as far left as possible
+                int commonOffset = commonSuffix(text1, equality1Start, equality1Length, edit, editStart, editLength);
+                if (commonOffset != 0) {
+                    equality1Length -= commonOffset;
+                    editStart -= commonOffset;
+                    equality2Start -= commonOffset;
+                    equality2Length += commonOffset;
+                }
+
+                // second, step character by character right, looking for the best fit
+                int bestEquality1Length = equality1Length;
+                int bestEditStart = editStart;
+                int bestEquality2Start = equality2Start;
+                int bestEquality2Length = equality2Length;
+                int bestScore = semanticScore(text1, equality1Start, equality1Length, edit, editStart, editLength)
+                        + semanticScore(edit, editStart, editLength, text1, equality2Start, equality2Length);
+                while (editLength != 0 && equality2Length != 0
+                        && edit.charAt(editStart) == text1.charAt(equality2Start)) {
+                    equality1Length++;
+                    editStart++;
+                    equality2Start++;
+                    equality2Length--;
+                    int score = semanticScore(text1, equality1Start, equality1Length, edit, editStart, editLength)
+                            + semanticScore(edit, editStart, editLength, text1, equality2Start, equality2Length);
+                    // the >= encourages trailing rather than leading whitespace on edits
+                    if (score >= bestScore) {
+                        bestScore = score;
+                        bestEquality1Length = equality1Length;
+                        bestEditStart = editStart;
+                        bestEquality2Start = equality2Start;
+                        bestEquality2Length = equality2Length;
+                    }
+                }
+
+                if (length(prev) != bestEquality1Length) {
+                    // we have an improvement, save it back to the diff
+                    data[STRIDE * prev + 2] = bestEquality1Length;
+                    if (bestEquality1Length == 0) {
+                        removed[prev] = true;
+                        anyRemoved = true;
+                    }
+                    data[STRIDE * cur + 1] = bestEditStart;
+                    data[STRIDE * next + 1] = bestEquality2Start;
+                    data[STRIDE * next + 2] = bestEquality2Length;
+                    if (bestEquality2Length == 0) {
+                        // the same edit is looked at again, against the equality after the one removed
+                        removed[next] = true;
+                        anyRemoved = true;
+                        next++;
+                        continue;
+                    }
+                }
+            }
+            prev = cur;
+            cur = next;
+            next++;
+        }
+        if (anyRemoved) {
+            compact(removed);
+        }
+    }
+
+    /**
+     * Reorders and merges like edit sections, and merges equalities. Any edit section can move as long as
+     * it doesn't cross an equality. See diff_match_patch.diff_cleanupMerge.
+     */
+    void cleanupMerge() {
+        int[] old = data;
+        int oldSize = size;
+        data = new int[old.length + STRIDE * 2];
+        size = 0;
+        int count_delete = 0;
+        int count_insert = 0;
+        // the deletions of an edit section are contiguous in text1, and its insertions in text2
+        int delete_start = -1, delete_length = 0;
+        int insert_start = -1, insert_length = 0;
+        int prevEqual = -1;
+        for (int i = 0; i <= oldSize; i++) {
+            // a dummy equality at the end flushes the last edit section
+            int op = i < oldSize ? old[STRIDE * i] : EQUAL;
+            int start = i < oldSize ? old[STRIDE * i + 1] : text1.length();
+            int length = i < oldSize ? old[STRIDE * i + 2] : 0;
+            switch (op) {
+                case INSERT:
+                    if (count_insert++ == 0) {
+                        insert_start = start;
+                    }
+                    insert_length += length;
+                    prevEqual = -1;
+                    break;
+                case DELETE:
+                    if (count_delete++ == 0) {
+                        delete_start = start;
+                    }
+                    delete_length += length;
+                    prevEqual = -1;
+                    break;
+                case EQUAL:
+                    if (count_delete + count_insert > 1) {
+                        if (count_delete != 0 && count_insert != 0) {
+                            // factor out any common prefixes
+                            int commonlength = commonPrefix(text2, insert_start, insert_length,
+                                    text1, delete_start, delete_length);
+                            if (commonlength != 0) {
+                                if (size > 0) {
+                                    // the previous hunk is an equality, which ends where the deletions begin
+                                    data[STRIDE * (size - 1) + 2] += commonlength;
+                                } else {
+                                    add(EQUAL, delete_start, commonlength);
+                                }
+                                insert_start += commonlength;
+                                insert_length -= commonlength;
+                                delete_start += commonlength;
+                                delete_length -= commonlength;
+                            }
+                            // factor out any common suffixes
+                            commonlength = commonSuffix(text2, insert_start, insert_length,
+                                    text1, delete_start, delete_length);
+                            if (commonlength != 0) {
+                                start -= commonlength;
+                                length += commonlength;
+                                insert_length -= commonlength;
+                                delete_length -= commonlength;
+                            }
+                        }
+                        // insert the merged records
+                        if (delete_length != 0) {
+                            add(DELETE, delete_start, delete_length);
+                        }
+                        if (insert_length != 0) {
+                            add(INSERT, insert_start, insert_length);
+                        }
+                        add(EQUAL, start, length);
+                    } else if (prevEqual != -1) {
+                        // merge this equality with the previous one
+                        data[STRIDE * prevEqual + 2] += length;
+                    } else {
+                        // a lone edit stays where it is
+                        if (count_delete == 1) {
+                            add(DELETE, delete_start, delete_length);
+                        } else if (count_insert == 1) {
+                            add(INSERT, insert_start, insert_length);
+                        }
+                        add(EQUAL, start, length);
+                    }
+                    count_insert = 0;
+                    count_delete = 0;
+                    delete_length = 0;
+                    insert_length = 0;
+                    prevEqual = size - 1;
+                    break;
+            }
+        }
+        if (size > 0 && length(size - 1) == 0) {
+            size--; // remove the dummy entry at the end
+        }
+
+        // second pass: look for single edits surrounded on both sides by equalities which can be shifted
+        // sideways to eliminate an equality, e.g: A<ins>BA</ins>C -> <ins>AB</ins>AC
+        boolean changes = false;
+        boolean[] removed = new boolean[size];
+        int prev = 0, cur = 1, next = 2;
+        // intentionally ignore the first and last element (don't need checking)
+        while (next < size) {
+            if (operation(prev) == EQUAL && operation(next) == EQUAL) {
+                // this is a single edit surrounded by equalities
+                String edit = source(cur);
+                int editStart = start(cur), editLength = length(cur);
+                int prevLength = length(prev), nextLength = length(next);
+                if (endsWith(edit, editStart, editLength, text1, start(prev), prevLength)) {
+                    // shift the edit over the previous equality
+                    data[STRIDE * cur + 1] = editStart - prevLength;
+                    data[STRIDE * next + 1] = start(next) - prevLength;
+                    data[STRIDE * next + 2] = nextLength + prevLength;
+                    removed[prev] = true;
+                    changes = true;
+                    prev = next;
+                    cur = next + 1;
+                    next += 2;
+                    continue;
+                } else if (startsWith(edit, editStart, editLength, text1, start(next), nextLength)) {
+                    // shift the edit over the next equality
+                    data[STRIDE * prev + 2] = prevLength + nextLength;
+                    data[STRIDE * cur + 1] = editStart + nextLength;
+                    removed[next] = true;
+                    changes = true;
+                    prev = cur;
+                    cur = next + 1;
+                    next += 2;
+                    continue;
+                }
+            }
+            prev = cur;
+            cur = next;
+            next++;
+        }
+        // if shifts were made, the diff needs reordering and another shift sweep
+        if (changes) {
+            compact(removed);
+            cleanupMerge();
+        }
+    }
+
+    /**
+     * Drops the marked hunks.
+     * @param removed removed[i] is true if hunk i is to be dropped
+     */
+    private void compact(boolean[] removed) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removed[i]) {
+                System.arraycopy(data, STRIDE * i, data, STRIDE * kept, STRIDE);
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * @return The number of characters common to the start of both ranges
+     */
+    static int commonPrefix(String a, int aStart, int aLength, String b, int bStart, int bLength) {
+        int n = Math.min(aLength, bLength);
+        for (int i = 0; i < n; i++) {
+            if (a.charAt(aStart + i) != b.charAt(bStart + i)) {
+                return i;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return The number of characters common to the end of both ranges
+     */
+    static int commonSuffix(String a, int aStart, int aLength, String b, int bStart, int bLength) {
+        int n = Math.min(aLength, bLength);
+        int aEnd = aStart + aLength, bEnd = bStart + bLength;
+        for (int i = 1; i <= n; i++) {
+            if (a.charAt(aEnd - i) != b.charAt(bEnd - i)) {
+                return i - 1;
+            }
+        }
+        return n;
+    }
+
+    private static boolean startsWith(String a, int aStart, int aLength, String prefix, int pStart, int pLength) {
+        return pLength <= aLength && a.regionMatches(aStart, prefix, pStart, pLength);
+    }
+
+    private static boolean endsWith(String a, int aStart, int aLength, String suffix, int sStart, int sLength) {
+        return sLength <= aLength && a.regionMatches(aStart + aLength - sLength, suffix, sStart, sLength);
+    }
+
+    /**
+     * Determines how far the end of the first range overlaps the start of the second.
+     * See diff_match_patch.diff_commonOverlap.
+     * @return The number of characters common to the end of the first range and the start of the second
+     */
+    private static int commonOverlap(String a, int aStart, int aLength, String b, int bStart, int bLength) {
+        // eliminate the null case
+        if (aLength == 0 || bLength == 0) {
+            return 0;
+        }
+        // truncate the longer range
+        int length = Math.min(aLength, bLength);
+        int aEnd = aStart + aLength;
+        // quick check for the worst case
+        if (b.regionMatches(bStart, a, aEnd - length, length)) {
+            return length;
+        }
+        // start by looking for a single character match and increase length until no match is found
+        int best = 0;
+        int candidate = 1;
+        while (true) {
+            int found = indexOf(b, bStart, length, a, aEnd - candidate, candidate);
+            if (found == -1) {
+                return best;
+            }
+            candidate += found;
+            if (found == 0 || b.regionMatches(bStart, a, aEnd - candidate, candidate)) {
+                best = candidate;
+                candidate++;
+            }
+        }
+    }
+
+    /**
+     * @return The offset within the range of the first occurrence of the pattern, or -1
+     */
+    private static int indexOf(String s, int sStart, int sLength, String pattern, int pStart, int pLength) {
+        for (int i = 0; i + pLength <= sLength; i++) {
+            if (s.regionMatches(sStart + i, pattern, pStart, pLength)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scores how well the boundary between two ranges falls on a logical boundary, from 6 (best) to 0
+     * (worst). See diff_match_patch.diff_cleanupSemanticScore.
+     */
+    private static int semanticScore(String one, int oneStart, int oneLength, String two, int twoStart, int twoLength) {
+        if (oneLength == 0 || twoLength == 0) {
+            // edges are the best
+            return 6;
+        }
+        char char1 = one.charAt(oneStart + oneLength - 1);
+        char char2 = two.charAt(twoStart);
+        boolean nonAlphaNumeric1 = !Character.isLetterOrDigit(char1);
+        boolean nonAlphaNumeric2 = !Character.isLetterOrDigit(char2);
+        boolean whitespace1 = nonAlphaNumeric1 && Character.isWhitespace(char1);
+        boolean whitespace2 = nonAlphaNumeric2 && Character.isWhitespace(char2);
+        boolean lineBreak1 = whitespace1 && Character.getType(char1) == Character.CONTROL;
+        boolean lineBreak2 = whitespace2 && Character.getType(char2) == Character.CONTROL;
+        boolean blankLine1 = lineBreak1 && endsWithBlankLine(one, oneStart, oneLength);
+        boolean blankLine2 = lineBreak2 && startsWithBlankLine(two, twoStart, twoLength);
+
+        if (blankLine1 || blankLine2) {
+            // five points for blank lines
+            return 5;
+        } else if (lineBreak1 || lineBreak2) {
+            // four points for line breaks
+            return 4;
+        } else if (nonAlphaNumeric1 && !whitespace1 && whitespace2) {
+            // three points for end of sentences
+            return 3;
+        } else if (whitespace1 || whitespace2) {
+            // two points for whitespace
+            return 2;
+        } else if (nonAlphaNumeric1 || nonAlphaNumeric2) {
+            // one point for non-alphanumeric
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if the range ends with a blank line, by the same rule as diff_match_patch
+     */
+    private static boolean endsWithBlankLine(String s, int start, int length) {
+        return BLANKLINEEND.matcher(s).region(start, start + length).find();
+    }
+
+    /**
+     * @return true if the range starts with \r?\n\r?\n
+     */
+    private static boolean startsWithBlankLine(String s, int start, int length) {
+        int i = start, end = start + length;
+        for (int newlines = 0; newlines < 2; newlines++) {
+            if (i < end && s.charAt(i) == '\r') {
+                i++;
+            }
+            if (i >= end || s.charAt(i) != '\n') {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,231 @@
+package PDFDiffFX;
+
+import java.util.Arrays;
+
+/**
+ * Decides which page of one document each page of the other is compared with in the paginated reports.
+ * <p>
+ * By default pages are paired by position: the i-th selected page of each document, with the extra pages of
+ * the longer document left over at the end. When a page is inserted or removed near the front, that pairs
+ * every later page with the wrong one, so every later page is reported as changed and diffed in full.
+ * Aligning by similarity instead reduces each page to a MinHash signature of its word shingles and lines up
+ * the two sequences of signatures with an edit-distance DP, in which pairing two pages costs how dissimilar
+ * they are and leaving a page unpaired costs a little more than half of pairing two unrelated pages. Pages
+ * are therefore only left unpaired when that brings the pages around them into step.
+ * <p>
+ * Both kinds of alignment are a sequence of steps in document order; each step is a pair of pages or a page
+ * found in only one document. Pages are identified by their position in each document's selection, i.e. by
+ * their index in the ExtractedText or the resolved page array.
+ */
+class PageAlignment {
+
+    // number of hash functions in a MinHash signature; the similarity estimate is good to about 1/sqrt(64)
+    static final int SIGNATURE_LENGTH = 64;
+    // words per shingle
+    private static final int SHINGLE = 3;
+    // cost of leaving a page unpaired; pairing costs 1 - similarity, between 0 and 1
+    private static final double GAP_COST = 0.6;
+    // how far the alignment may stray from the diagonal beyond the difference in page counts, i.e. how many
+    // pages may be inserted in one place and removed in another
+    static final int BAND = 64;
+    // how the DP reached a cell: by pairing two pages, or by leaving a page of one document unpaired
+    private static final byte PAIR = 0;
+    private static final byte ONLY1 = 1;
+    private static final byte ONLY2 = 2;
+
+    // positions1[k] and positions2[k] are the pages of step k; -1 where the page is in only one document
+    private final int[] positions1;
+    private final int[] positions2;
+    private final int pairs;
+
+    private PageAlignment(int[] positions1, int[] positions2) {
+        this.positions1 = positions1;
+        this.positions2 = positions2;
+        int pairs = 0;
+        for (int k = 0; k < positions1.length; k++) {
+            if (positions1[k] != -1 && positions2[k] != -1) {
+                pairs++;
+            }
+        }
+        this.pairs = pairs;
+    }
+
+    /**
+     * Pairs pages by position, leaving the extra pages of the longer document unpaired at the end.
+     * @param pageCount1 The number of selected pages in the first document
+     * @param pageCount2 The number of selected pages in the second document
+     * @return The alignment
+     */
+    static PageAlignment byPosition(int pageCount1, int pageCount2) {
+        int steps = Math.max(pageCount1, pageCount2);
+        int[] positions1 = new int[steps], positions2 = new int[steps];
+        for (int k = 0; k < steps; k++) {
+            positions1[k] = k < pageCount1 ? k : -1;
+            positions2[k] = k < pageCount2 ? k : -1;
+        }
+        return new PageAlignment(positions1, positions2);
+    }
+
+    /**
+     * Pairs pages by the similarity of their text.
+     * @param text1 The text of the first document's selected pages
+     * @param text2 The text of the second document's selected pages
+     * @return The alignment
+     */
+    static PageAlignment bySimilarity(ExtractedText text1, ExtractedText text2) {
+        long[][] signatures1 = new long[text1.pageCount()][], signatures2 = new long[text2.pageCount()][];
+        for (int i = 0; i < signatures1.length; i++) {
+            signatures1[i] = signature(text1.getPage(i));
+        }
+        for (int j = 0; j < signatures2.length; j++) {
+            signatures2[j] = signature(text2.getPage(j));
+        }
+        return align(signatures1, signatures2);
+    }
+
+    /**
+     * Aligns two sequences of page signatures with an edit-distance DP, restricted to a band around the
+     * diagonal so that the work grows with the number of pages rather than its square.
+     * @param signatures1 The signatures of the first document's pages
+     * @param signatures2 The signatures of the second document's pages
+     * @return The cheapest alignment within the band
+     */
+    static PageAlignment align(long[][] signatures1, long[][] signatures2) {
+        int n = signatures1.length, m = signatures2.length;
+        // cell (i, j) is the cost of aligning the first i pages of one with the first j of the other; only
+        // cells with lowest <= i - j <= highest are kept, at column i - j - lowest of row i
+        int lowest = Math.min(0, n - m) - BAND, highest = Math.max(0, n - m) + BAND;
+        int width = highest - lowest + 1;
+        double[] previous = new double[width], current = new double[width];
+        // how each cell was reached: PAIR from (i-1, j-1), ONLY1 from (i-1, j), ONLY2 from (i, j-1)
+        byte[][] moves = new byte[n + 1][width];
+        for (int i = 0; i <= n; i++) {
+            Arrays.fill(current, Double.POSITIVE_INFINITY);
+            for (int j = Math.max(0, i - highest); j <= Math.min(m, i - lowest); j++) {
+                int column = i - j - lowest;
+                double best;
+                byte move;
+                if (i == 0 && j == 0) {
+                    best = 0;
+                    move = PAIR;
+                } else {
+                    best = Double.POSITIVE_INFINITY;
+                    move = PAIR;
+                    if (i > 0 && j > 0) {
+                        // (i-1, j-1) is on the same diagonal
+                        best = previous[column] + 1 - similarity(signatures1[i - 1], signatures2[j - 1]);
+                    }
+                    if (i > 0 && column > 0 && previous[column - 1] + GAP_COST < best) {
+                        best = previous[column - 1] + GAP_COST;
+                        move = ONLY1;
+                    }
+                    if (j > 0 && column + 1 < width && current[column + 1] + GAP_COST < best) {
+                        best = current[column + 1] + GAP_COST;
+                        move = ONLY2;
+                    }
+                }
+                current[column] = best;
+                moves[i][column] = move;
+            }
+            double[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        // walk back from (n, m), collecting the steps in reverse
+        int[] positions1 = new int[n + m], positions2 = new int[n + m];
+        int steps = 0;
+        for (int i = n, j = m; i > 0 || j > 0; steps++) {
+            byte move = moves[i][i - j - lowest];
+            positions1[steps] = move == ONLY2 ? -1 : --i;
+            positions2[steps] = move == ONLY1 ? -1 : --j;
+        }
+        int[] forward1 = new int[steps], forward2 = new int[steps];
+        for (int k = 0; k < steps; k++) {
+            forward1[k] = positions1[steps - 1 - k];
+            forward2[k] = positions2[steps - 1 - k];
+        }
+        return new PageAlignment(forward1, forward2);
+    }
+
+    /**
+     * Computes the MinHash signature of a page: for each of SIGNATURE_LENGTH hash functions, the least hash
+     * of any of the page's shingles (runs of SHINGLE words). Pages with fewer words than that are one
+     * shingle; a page without words has a signature of all Long.MAX_VALUE.
+     * @param page The text of the page
+     * @return The signature
+     */
+    static long[] signature(String page) {
+        long[] signature = new long[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        String[] words = page.trim().split("\\s+");
+        if (words.length == 1 && words[0].isEmpty()) {
+            return signature;
+        }
+        for (int start = 0; start + SHINGLE <= Math.max(words.length, SHINGLE); start++) {
+            long shingle = 0;
+            for (int w = start; w < Math.min(start + SHINGLE, words.length); w++) {
+                shingle = shingle * 0x100000001B3L + words[w].hashCode();
+            }
+            for (int h = 0; h < SIGNATURE_LENGTH; h++) {
+                signature[h] = Math.min(signature[h], mix(shingle + h * 0x9E3779B97F4A7C15L));
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Estimates the Jaccard similarity of two pages' shingles as the fraction of their signatures that agree.
+     * @return A similarity between 0 (nothing in common) and 1 (the same shingles, or both pages without words)
+     */
+    static double similarity(long[] signature1, long[] signature2) {
+        int equal = 0;
+        for (int h = 0; h < SIGNATURE_LENGTH; h++) {
+            if (signature1[h] == signature2[h]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIGNATURE_LENGTH;
+    }
+
+    /**
+     * The finalizer of SplitMix64, which turns a run of similar values into unrelated ones.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return The number of steps, i.e. of pairs and unpaired pages
+     */
+    int size() {
+        return positions1.length;
+    }
+
+    /**
+     * @param step The index of a step
+     * @return The position of the step's page in the first document's selection, or -1 if the page is only
+     *      in the second document
+     */
+    int position1(int step) {
+        return positions1[step];
+    }
+
+    /**
+     * @param step The index of a step
+     * @return The position of the step's page in the second document's selection, or -1 if the page is only
+     *      in the first document
+     */
+    int position2(int step) {
+        return positions2[step];
+    }
+
+    /**
+     * @return The number of steps that pair two pages
+     */
+    int pairCount() {
+        return pairs;
+    }
+}
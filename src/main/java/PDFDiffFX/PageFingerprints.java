@@ -0,0 +1,419 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cheap pre-pass that finds page pairs which cannot differ, so that extraction, diffing and rendering can
+ * all be skipped for them.
+ * <p>
+ * Each page is reduced to a SHA-256 digest of everything that determines what it shows: its decoded content
+ * streams, the resources they use (fonts, images, forms, graphics states...), its annotations, and its
+ * boxes and rotation. Two pages with the same digest render identically and contain the same text, however
+ * differently the surrounding files are laid out (object numbers, incremental updates, metadata).
+ * Resources shared between pages, such as embedded fonts, are only hashed once per document.
+ */
+class PageFingerprints {
+
+    // keys that point back up the page tree; following them would hash the whole document into every page
+    private static final List<COSName> BACK_REFERENCES = Arrays.asList(COSName.PARENT, COSName.P);
+
+    // digests1[k] is the digest of the k-th selected page of the first document, digests2 of the second
+    private final byte[][] digests1;
+    private final byte[][] digests2;
+    // unchanged[i] is true if the i-th pair of selected pages have the same digest
+    private final boolean[] unchanged;
+    private final int[] unchangedPages2;
+
+    private PageFingerprints(byte[][] digests1, byte[][] digests2, boolean[] unchanged, int[] unchangedPages2) {
+        this.digests1 = digests1;
+        this.digests2 = digests2;
+        this.unchanged = unchanged;
+        this.unchangedPages2 = unchangedPages2;
+    }
+
+    /**
+     * Fingerprints the selected pages of two documents and notes which pairs match. The i-th selected page of
+     * one document is paired with the i-th selected page of the other.
+     * @param doc1 The first document
+     * @param pages1 The zero-based indices of the pages of doc1 to compare, in ascending order
+     * @param doc2 The second document
+     * @param pages2 The zero-based indices of the pages of doc2 to compare, in ascending order
+     * @return Which page pairs are unchanged
+     * @throws IOException if a page's content cannot be read
+     */
+    static PageFingerprints compare(PDDocument doc1, int[] pages1, PDDocument doc2, int[] pages2)
+            throws IOException {
+        return compare(digestPages(doc1, pages1), digestPages(doc2, pages2), pages2,
+                PageAlignment.byPosition(pages1.length, pages2.length));
+    }
+
+    /**
+     * Notes which pairs of already fingerprinted pages match, with pages paired as an alignment says.
+     * @param digests1 The digests of the selected pages of the first document, from digestPages
+     * @param digests2 The digests of the selected pages of the second document
+     * @param pages2 The zero-based indices of the selected pages of the second document, in ascending order
+     * @param alignment Which pages are compared with which; pairs are numbered in the alignment's order
+     * @return Which page pairs are unchanged
+     */
+    static PageFingerprints compare(byte[][] digests1, byte[][] digests2, int[] pages2, PageAlignment alignment) {
+        boolean[] unchanged = new boolean[alignment.pairCount()];
+        List<Integer> unchangedPages2 = new ArrayList<>();
+        for (int step = 0, pair = 0; step < alignment.size(); step++) {
+            int position1 = alignment.position1(step), position2 = alignment.position2(step);
+            if (position1 == -1 || position2 == -1) {
+                continue;
+            }
+            if (MessageDigest.isEqual(digests1[position1], digests2[position2])) {
+                unchanged[pair] = true;
+                unchangedPages2.add(pages2[position2]);
+            }
+            pair++;
+        }
+        // an alignment may pair pages out of order, but the pages left out of extraction must be ascending
+        return new PageFingerprints(digests1, digests2, unchanged,
+                unchangedPages2.stream().mapToInt(Integer::intValue).sorted().toArray());
+    }
+
+    /**
+     * Computes the digests of some of a document's pages. Resources shared between the pages are only
+     * hashed once.
+     * @param doc The document
+     * @param pages The zero-based indices of the pages to digest
+     * @return The digest of each page, in the order of pages
+     * @throws IOException if a page's content cannot be read
+     */
+    static byte[][] digestPages(PDDocument doc, int[] pages) throws IOException {
+        Digester digester = new Digester();
+        byte[][] digests = new byte[pages.length][];
+        for (int k = 0; k < pages.length; k++) {
+            digests[k] = digester.digest(doc.getPage(pages[k]));
+        }
+        return digests;
+    }
+
+    /**
+     * Computes the digest of a single page.
+     * @param page The page
+     * @return The page's SHA-256 digest
+     * @throws IOException if the page's content cannot be read
+     */
+    static byte[] digest(PDPage page) throws IOException {
+        return new Digester().digest(page);
+    }
+
+    /**
+     * @param pair The index of a page pair, i.e. of a page within each document's selection
+     * @return true if both pages of the pair have the same digest
+     */
+    boolean isUnchanged(int pair) {
+        return pair < unchanged.length && unchanged[pair];
+    }
+
+    /**
+     * @return The number of page pairs with the same digest
+     */
+    int unchangedCount() {
+        return unchangedPages2.length;
+    }
+
+    /**
+     * @return The zero-based indices of the second document's pages that belong to unchanged pairs, in
+     *      ascending order
+     */
+    int[] unchangedPages2() {
+        return unchangedPages2;
+    }
+
+    /**
+     * @param position The position of a page in the first document's selection
+     * @return The page's SHA-256 digest
+     */
+    byte[] digest1(int position) {
+        return digests1[position];
+    }
+
+    /**
+     * @param position The position of a page in the second document's selection
+     * @return The page's SHA-256 digest
+     */
+    byte[] digest2(int position) {
+        return digests2[position];
+    }
+
+    /**
+     * Digests pages of one document, remembering the digest of every indirect object it has seen. Used on
+     * its own when pages are digested one at a time, e.g. by DifferenceCheck.
+     */
+    static class Digester {
+
+        private final Map<COSBase, byte[]> digests = new IdentityHashMap<>();
+        // objects being digested further up the stack; meeting one again means a cycle
+        private final Map<COSBase, Boolean> inProgress = new IdentityHashMap<>();
+
+        /**
+         * @param page A page of the document this digester is for
+         * @return The page's SHA-256 digest
+         * @throws IOException if the page's content cannot be read
+         */
+        byte[] digest(PDPage page) throws IOException {
+            MessageDigest md = DocumentSource.newSha256();
+            update(md, "box " + page.getMediaBox() + " " + page.getCropBox() + " rotate " + page.getRotation());
+            // concatenation of all the page's content streams, decoded
+            byte[] contents = new byte[0];
+            try (InputStream in = page.getContents()) {
+                if (in != null) {
+                    contents = IOUtils.toByteArray(in);
+                }
+            }
+            md.update(contents);
+            // resources may be inherited from the page tree, which getResources takes care of
+            PDResources resources = page.getResources();
+            update(md, "resources");
+            if (resources != null) {
+                COSDictionary dict = resources.getCOSObject();
+                md.update(digestResources(dict, usedNames(dict, contents)));
+            }
+            update(md, "annots");
+            md.update(digest(page.getCOSObject().getDictionaryObject(COSName.ANNOTS)));
+            return md.digest();
+        }
+
+        /**
+         * Digests the resources a page's content stream actually uses. Resource dictionaries are often shared
+         * by every page of a document, so editing one page (e.g. adding a font) would otherwise change the
+         * digest of them all. A resource that the content stream never names cannot affect the page.
+         * @param resources The page's resource dictionary
+         * @param used The names appearing in the page's content stream
+         */
+        private byte[] digestResources(COSDictionary resources, Set<String> used) throws IOException {
+            MessageDigest md = DocumentSource.newSha256();
+            List<COSName> categories = new ArrayList<>(resources.keySet());
+            Collections.sort(categories);
+            for (COSName category : categories) {
+                update(md, "/" + category.getName());
+                COSBase entries = resources.getDictionaryObject(category);
+                if (entries instanceof COSDictionary && !(entries instanceof COSStream)) {
+                    // e.g. /Font or /XObject: only the entries the content refers to
+                    COSDictionary dict = (COSDictionary) entries;
+                    List<COSName> keys = new ArrayList<>(dict.keySet());
+                    Collections.sort(keys);
+                    for (COSName key : keys) {
+                        if (used.contains(key.getName())) {
+                            update(md, "/" + key.getName());
+                            md.update(digest(dict.getItem(key)));
+                        }
+                    }
+                } else {
+                    md.update(digest(entries));
+                }
+            }
+            return md.digest();
+        }
+
+        /**
+         * Digests an object and everything it refers to. Streams are digested by their raw (still encoded)
+         * data, which is equal whenever the decoded data and filters are; streams with resources of their
+         * own are digested like pages, by their decoded content and the resources it uses.
+         */
+        private byte[] digest(COSBase object) throws IOException {
+            if (object instanceof COSObject) {
+                object = ((COSObject) object).getObject();
+            }
+            byte[] known = digests.get(object);
+            if (known != null) {
+                return known;
+            }
+            MessageDigest md = DocumentSource.newSha256();
+            if (object == null) {
+                update(md, "null");
+                return md.digest();
+            }
+            if (inProgress.containsKey(object)) {
+                update(md, "cycle");
+                return md.digest();
+            }
+            inProgress.put(object, Boolean.TRUE);
+            try {
+                if (object instanceof COSStream && ((COSStream) object).containsKey(COSName.RESOURCES)) {
+                    // a content stream of its own (a form or pattern), which often shares the page's
+                    // resources, so is treated like a page
+                    COSStream stream = (COSStream) object;
+                    update(md, "content stream");
+                    byte[] contents;
+                    try (InputStream in = stream.createInputStream()) {
+                        contents = IOUtils.toByteArray(in);
+                    }
+                    md.update(contents);
+                    List<COSName> keys = new ArrayList<>(stream.keySet());
+                    Collections.sort(keys);
+                    for (COSName key : keys) {
+                        if (key.equals(COSName.RESOURCES)) {
+                            COSBase resources = stream.getDictionaryObject(key);
+                            if (resources instanceof COSDictionary) {
+                                update(md, "/Resources");
+                                md.update(digestResources((COSDictionary) resources,
+                                        usedNames((COSDictionary) resources, contents)));
+                            }
+                        } else if (!BACK_REFERENCES.contains(key) && !key.equals(COSName.FILTER)
+                                && !key.equals(COSName.DECODE_PARMS) && !key.equals(COSName.LENGTH)) {
+                            update(md, "/" + key.getName());
+                            md.update(digest(stream.getItem(key)));
+                        }
+                    }
+                } else if (object instanceof COSDictionary) {
+                    COSDictionary dict = (COSDictionary) object;
+                    update(md, object instanceof COSStream ? "stream" : "dict");
+                    List<COSName> keys = new ArrayList<>(dict.keySet());
+                    Collections.sort(keys);
+                    for (COSName key : keys) {
+                        if (!BACK_REFERENCES.contains(key)) {
+                            update(md, "/" + key.getName());
+                            md.update(digest(dict.getItem(key)));
+                        }
+                    }
+                    if (object instanceof COSStream) {
+                        try (InputStream raw = ((COSStream) object).createRawInputStream()) {
+                            byte[] buffer = new byte[64 * 1024];
+                            for (int n; (n = raw.read(buffer)) != -1; ) {
+                                md.update(buffer, 0, n);
+                            }
+                        }
+                    }
+                } else if (object instanceof COSArray) {
+                    update(md, "array");
+                    for (COSBase item : (COSArray) object) {
+                        md.update(digest(item));
+                    }
+                } else if (object instanceof COSString) {
+                    update(md, "string");
+                    md.update(((COSString) object).getBytes());
+                } else if (object instanceof COSName) {
+                    update(md, "/" + ((COSName) object).getName());
+                } else if (object instanceof COSInteger) {
+                    update(md, "integer " + ((COSInteger) object).longValue());
+                } else if (object instanceof COSNumber) {
+                    update(md, "number " + ((COSNumber) object).floatValue());
+                } else if (object instanceof COSBoolean) {
+                    update(md, "bool " + ((COSBoolean) object).getValue());
+                } else {
+                    update(md, object.toString());
+                }
+            } finally {
+                inProgress.remove(object);
+            }
+            byte[] result = md.digest();
+            // only containers are worth remembering; primitives are cheaper to hash again
+            if (object instanceof COSDictionary || object instanceof COSArray) {
+                digests.put(object, result);
+            }
+            return result;
+        }
+
+        /**
+         * Finds the resources a content stream uses. A form or pattern without resources of its own uses
+         * those of the stream that draws it, so the names in its content count as used too; otherwise a
+         * change to a font only such a form uses would leave the page's digest as it was.
+         * @param resources The resource dictionary the content stream uses
+         * @param contents The decoded content stream
+         * @return The names appearing in the content stream and in those of the forms and patterns it draws
+         *      that have no resources of their own
+         * @throws IOException if a form's content cannot be read
+         */
+        private static Set<String> usedNames(COSDictionary resources, byte[] contents) throws IOException {
+            Set<String> used = namesIn(contents);
+            Map<COSBase, Boolean> seen = new IdentityHashMap<>();
+            Deque<String> pending = new ArrayDeque<>(used);
+            while (!pending.isEmpty()) {
+                String name = pending.pop();
+                for (COSName category : Arrays.asList(COSName.XOBJECT, COSName.PATTERN)) {
+                    COSBase entries = resources.getDictionaryObject(category);
+                    if (!(entries instanceof COSDictionary)) {
+                        continue;
+                    }
+                    COSBase entry = ((COSDictionary) entries).getDictionaryObject(COSName.getPDFName(name));
+                    if (entry instanceof COSStream && !((COSStream) entry).containsKey(COSName.RESOURCES)
+                            && seen.put(entry, Boolean.TRUE) == null) {
+                        byte[] formContents;
+                        try (InputStream in = ((COSStream) entry).createInputStream()) {
+                            formContents = IOUtils.toByteArray(in);
+                        }
+                        for (String formName : namesIn(formContents)) {
+                            if (used.add(formName)) {
+                                pending.push(formName);
+                            }
+                        }
+                    }
+                }
+            }
+            return used;
+        }
+
+        /**
+         * Finds every name token (e.g. /F1 or /Im0) in a content stream, with #xx escapes decoded. Names
+         * inside strings are picked up too, which at worst includes a resource that isn't used.
+         */
+        private static Set<String> namesIn(byte[] contents) {
+            Set<String> names = new HashSet<>();
+            for (int i = 0; i < contents.length; i++) {
+                if (contents[i] != '/') {
+                    continue;
+                }
+                ByteArrayOutputStream name = new ByteArrayOutputStream();
+                for (i++; i < contents.length && isRegular(contents[i]); i++) {
+                    int high = i + 2 < contents.length ? Character.digit(contents[i + 1], 16) : -1;
+                    int low = i + 2 < contents.length ? Character.digit(contents[i + 2], 16) : -1;
+                    if (contents[i] == '#' && high != -1 && low != -1) {
+                        name.write(high * 16 + low);
+                        i += 2;
+                    } else {
+                        name.write(contents[i]);
+                    }
+                }
+                i--;
+                names.add(new String(name.toByteArray(), StandardCharsets.UTF_8));
+            }
+            return names;
+        }
+
+        /**
+         * @return true unless the byte is PDF whitespace or a delimiter, i.e. if it can be part of a name
+         */
+        private static boolean isRegular(byte b) {
+            return b > ' ' && "()<>[]{}/%".indexOf(b) == -1;
+        }
+
+        private static void update(MessageDigest md, String token) {
+            md.update(token.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+    }
+}
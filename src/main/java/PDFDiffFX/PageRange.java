@@ -0,0 +1,102 @@
+package PDFDiffFX;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A selection of pages given on the command line, e.g. "1-20", "3,5,9-12" or "40-" (page 40 to the end).
+ * Page numbers in the spec are one-based, as a user would read them; resolved selections are zero-based
+ * page indices.
+ */
+class PageRange {
+
+    // one-based, inclusive; to == Integer.MAX_VALUE for an open-ended run
+    private final List<int[]> runs = new ArrayList<>();
+
+    /**
+     * Parses a page range spec.
+     * @param spec A comma-separated list of page numbers and runs of pages, e.g. "1-5,8,10-"
+     * @return The page range
+     * @throws IllegalArgumentException if the spec is malformed
+     */
+    static PageRange parse(String spec) {
+        PageRange range = new PageRange();
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            try {
+                int dash = part.indexOf('-');
+                int from, to;
+                if (dash == -1) {
+                    from = to = Integer.parseInt(part);
+                } else {
+                    from = Integer.parseInt(part.substring(0, dash).trim());
+                    String end = part.substring(dash + 1).trim();
+                    to = end.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(end);
+                }
+                if (from < 1 || to < from) {
+                    throw new IllegalArgumentException("Invalid page range: " + spec);
+                }
+                range.runs.add(new int[]{from, to});
+            } catch (NumberFormatException _nfe) {
+                throw new IllegalArgumentException("Invalid page range: " + spec);
+            }
+        }
+        return range;
+    }
+
+    /**
+     * Resolves the range against a document, dropping pages past its end.
+     * @param range The page range, or null for every page
+     * @param pageCount The number of pages in the document
+     * @return The selected zero-based page indices, in ascending order without duplicates
+     */
+    static int[] resolve(PageRange range, int pageCount) {
+        return resolve(range, pageCount, null);
+    }
+
+    /**
+     * Resolves the range against a document, dropping pages past its end as well as pages to be left out.
+     * @param range The page range, or null for every page
+     * @param pageCount The number of pages in the document
+     * @param excluded Zero-based indices of pages to leave out; may be null
+     * @return The selected zero-based page indices, in ascending order without duplicates
+     */
+    static int[] resolve(PageRange range, int pageCount, int[] excluded) {
+        boolean[] selected = new boolean[pageCount];
+        int count = 0;
+        for (int i = 0; i < pageCount; i++) {
+            if (range == null || range.contains(i + 1)) {
+                selected[i] = true;
+                count++;
+            }
+        }
+        if (excluded != null) {
+            for (int page : excluded) {
+                if (page < pageCount && selected[page]) {
+                    selected[page] = false;
+                    count--;
+                }
+            }
+        }
+        int[] pages = new int[count];
+        for (int i = 0, j = 0; i < pageCount; i++) {
+            if (selected[i]) {
+                pages[j++] = i;
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * @param page A one-based page number
+     * @return true if the page is part of the range
+     */
+    private boolean contains(int page) {
+        for (int[] run : runs) {
+            if (page >= run[0] && page <= run[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
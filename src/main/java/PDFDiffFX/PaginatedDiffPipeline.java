@@ -0,0 +1,213 @@
+package PDFDiffFX;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Produces the paginated textual diff as a set of concurrent stages rather than one phase after another:
+ * <pre>
+ *   extract doc1 --\
+ *                   +--> diff pages --> write report
+ *   extract doc2 --/
+ * </pre>
+ * Stages are joined by bounded queues, so a fast stage blocks once it is a few pages ahead of the stage it
+ * feeds. The first differing pages reach the report while later pages are still being extracted, and the
+ * memory held by the paginated report is bounded by the queue depth rather than the document size.
+ * The full text of both documents is still collected along the way for the whole-document and summary
+ * reports.
+ * <p>
+ * Page pairs whose fingerprints match are only extracted from the first document and are never diffed; the
+ * second document's text for them is copied from the first.
+ */
+class PaginatedDiffPipeline {
+
+    static final int DEFAULT_QUEUE_DEPTH = 16;
+
+    // marks the end of a stage's output
+    private static final Page END = new Page(-1, null);
+
+    private final ReportTool reportTool;
+    private final TextExtractor extractor;
+    private final int queueDepth;
+
+    private final ExtractedText[] texts = new ExtractedText[2];
+
+    /**
+     * A page of text travelling between stages. For the diff stage's output, text holds the page's HTML
+     * report, or null when the page has no differences.
+     */
+    private static class Page {
+        final int index;
+        final String text;
+
+        Page(int index, String text) {
+            this.index = index;
+            this.text = text;
+        }
+    }
+
+    /**
+     * @param reportTool The report tool used to format each page's differences
+     * @param extractor Obtains the text of each document
+     * @param queueDepth The number of pages each queue can hold before its producer blocks
+     */
+    PaginatedDiffPipeline(ReportTool reportTool, TextExtractor extractor, int queueDepth) {
+        this.reportTool = reportTool;
+        this.extractor = extractor;
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Runs the pipeline to completion, writing the paginated report as pages are diffed. The report file
+     * is only created if a difference is found.
+     * @param source1 The first document
+     * @param range1 The pages of the first document to compare; null for every page
+     * @param source2 The second document
+     * @param range2 The pages of the second document to compare; null for every page
+     * @param fingerprints Which page pairs are known to be unchanged; null if fingerprints weren't compared
+     * @param reportFile The path of the paginated report
+     * @return The text extracted from both documents along the way
+     * @throws IOException if extraction fails or the report cannot be written
+     */
+    ExtractedText[] run(DocumentSource source1, PageRange range1, DocumentSource source2, PageRange range2,
+                        PageFingerprints fingerprints, String reportFile) throws IOException {
+        BlockingQueue<Page> pages1 = new ArrayBlockingQueue<>(queueDepth);
+        BlockingQueue<Page> pages2 = new ArrayBlockingQueue<>(queueDepth);
+        BlockingQueue<Page> diffs = new ArrayBlockingQueue<>(queueDepth);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        CompletionService<Void> stages = new ExecutorCompletionService<>(pool);
+        try {
+            int[] unchangedPages2 = fingerprints == null ? null : fingerprints.unchangedPages2();
+            stages.submit(() -> extract(0, source1, range1, null, pages1));
+            stages.submit(() -> extract(1, source2, range2, unchangedPages2, pages2));
+            stages.submit(() -> diff(pages1, pages2, fingerprints, diffs));
+            stages.submit(() -> write(diffs, reportFile));
+            // wait for every stage; the first failure cancels the rest
+            for (int i = 0; i < 4; i++) {
+                stages.take().get();
+            }
+            if (fingerprints != null && fingerprints.unchangedCount() > 0) {
+                texts[1] = withUnchangedPages(texts[1], texts[0], fingerprints);
+            }
+            return texts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while generating the paginated diff");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Paginated diff failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Extraction stage: strips a document and queues each page as it is completed.
+     */
+    private Void extract(int doc, DocumentSource source, PageRange range, int[] excluded, BlockingQueue<Page> out)
+            throws IOException, InterruptedException {
+        texts[doc] = extractor.extract(source, range, excluded, (page, text) -> {
+            try {
+                out.put(new Page(page, text));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        });
+        out.put(END);
+        return null;
+    }
+
+    /**
+     * Diff stage: pairs pages in order and queues the HTML for each, numbered by the first document's page.
+     * Unchanged pairs pass straight through; the second document's queue holds no page for them. Pages
+     * beyond the end of the shorter document are reported whole, as deletions or insertions.
+     */
+    private Void diff(BlockingQueue<Page> in1, BlockingQueue<Page> in2, PageFingerprints fingerprints,
+                      BlockingQueue<Page> out) throws InterruptedException {
+        Page page1 = in1.take(), page2 = null;
+        for (int pair = 0; page1 != END; pair++, page1 = in1.take()) {
+            if (fingerprints != null && fingerprints.isUnchanged(pair)) {
+                out.put(new Page(page1.index, null));
+                continue;
+            }
+            page2 = in2.take();
+            if (page2 == END) {
+                break;
+            }
+            out.put(new Page(page1.index, reportTool.formatPageDiff(page1.index, page1.text, page2.text)));
+        }
+        // leftovers
+        for (; page1 != END; page1 = in1.take()) {
+            out.put(new Page(page1.index, reportTool.formatLeftoverPage(page1.text, true)));
+        }
+        if (page2 != END) {
+            for (page2 = in2.take(); page2 != END; page2 = in2.take()) {
+                out.put(new Page(page2.index, reportTool.formatLeftoverPage(page2.text, false)));
+            }
+        }
+        out.put(END);
+        return null;
+    }
+
+    /**
+     * Write stage: appends each differing page to the report, opening the file on the first difference.
+     */
+    private Void write(BlockingQueue<Page> in, String reportFile) throws IOException, InterruptedException {
+        PrintWriter outWriter = null;
+        try {
+            for (Page page = in.take(); page != END; page = in.take()) {
+                if (page.text == null) {
+                    continue;
+                }
+                if (outWriter == null) {
+                    outWriter = new PrintWriter(reportFile);
+                }
+                outWriter.print(page.text);
+            }
+        } finally {
+            if (outWriter != null) {
+                outWriter.close();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fills in the second document's text for the unchanged page pairs, which were only extracted from the
+     * first document.
+     * @param partial The text extracted from the second document, without the unchanged pages
+     * @param text1 The text of the first document
+     * @param fingerprints Which page pairs are unchanged
+     * @return The text of every selected page of the second document
+     */
+    private static ExtractedText withUnchangedPages(ExtractedText partial, ExtractedText text1,
+                                                    PageFingerprints fingerprints) {
+        int pageCount = partial.pageCount() + fingerprints.unchangedCount();
+        StringBuilder text = new StringBuilder();
+        int[] offsets = new int[pageCount + 1];
+        int[] pageNumbers = new int[pageCount];
+        int[] unchangedPages2 = fingerprints.unchangedPages2();
+        for (int pair = 0, extracted = 0, unchanged = 0; pair < pageCount; pair++) {
+            if (fingerprints.isUnchanged(pair)) {
+                text.append(text1.getPage(pair));
+                pageNumbers[pair] = unchangedPages2[unchanged++];
+            } else {
+                text.append(partial.getPage(extracted));
+                pageNumbers[pair] = partial.pageNumber(extracted++);
+            }
+            offsets[pair + 1] = text.length();
+        }
+        return new ExtractedText(text.toString(), offsets, pageNumbers);
+    }
+}
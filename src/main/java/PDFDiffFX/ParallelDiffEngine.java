@@ -0,0 +1,151 @@
+package PDFDiffFX;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Diffs large texts on several threads. Lines that occur exactly once in each text, and in the same order,
+ * must line up in any sensible diff, so both texts can be cut at such anchor lines into pairs of segments
+ * that are diffed independently by another engine and then stitched back together. The segments are
+ * handed out as RecursiveTasks on a ForkJoinPool, halving the list of segments until each task holds one.
+ * <p>
+ * Texts too small to be worth cutting up, and texts with no anchors, are diffed directly. The result can
+ * differ slightly from an undivided diff near the cuts, but always covers both texts.
+ * <p>
+ * The engine owns its pool's threads, so it must be closed once the run is over.
+ */
+class ParallelDiffEngine implements DiffEngine, Closeable {
+
+    // texts shorter than this (in characters, combined) are diffed on the calling thread
+    static final int MIN_PARALLEL_LENGTH = 256 * 1024;
+    // segments are not cut much smaller than this, in characters of text1
+    private static final int MIN_SEGMENT_LENGTH = 32 * 1024;
+
+    private final DiffEngine engine;
+    private final ForkJoinPool pool;
+    private final int threads;
+
+    /**
+     * @param engine Diffs each pair of segments
+     * @param threads The number of threads to diff on
+     */
+    ParallelDiffEngine(DiffEngine engine, int threads) {
+        this.engine = engine;
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    @Override
+    public PackedDiff diff(String text1, String text2, diff_match_patch.Budget budget) {
+        if (text1.length() + text2.length() < MIN_PARALLEL_LENGTH) {
+            return engine.diff(text1, text2, budget);
+        }
+        List<int[]> segments = segments(text1, text2);
+        if (segments.size() < 2) {
+            return engine.diff(text1, text2, budget);
+        }
+        // each segment gets its share of the budget, since budgets can't be shared between threads
+        diff_match_patch.Budget[] portions = new diff_match_patch.Budget[segments.size()];
+        for (int i = 0; i < portions.length; i++) {
+            int[] segment = segments.get(i);
+            portions[i] = budget.portion((double) (segment[1] - segment[0] + segment[3] - segment[2])
+                    / (text1.length() + text2.length()));
+        }
+        PackedDiff diff = pool.invoke(new SegmentTask(text1, text2, segments, portions, 0, segments.size()));
+        for (diff_match_patch.Budget portion : portions) {
+            budget.absorb(portion);
+        }
+        return diff;
+    }
+
+    @Override
+    public boolean wordLevel() {
+        return engine.wordLevel();
+    }
+
+    /**
+     * Shuts down the pool's threads. Diffs already under way are finished.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Cuts both texts at anchor lines into segments of roughly equal size, a few per thread so that a
+     * segment with many changes doesn't hold up the rest.
+     * @return {start1, end1, start2, end2} character ranges covering both texts in order
+     */
+    List<int[]> segments(String text1, String text2) {
+        TextTokens tokens = TextTokens.lines(text1, text2);
+        int[] a = tokens.tokens1(), b = tokens.tokens2();
+        int unique = tokens.uniqueCount();
+        int[] anchors = PatienceEngine.anchors(a, 0, a.length, b, 0, b.length,
+                new int[unique], new int[unique], new int[unique]);
+
+        int targetLength = Math.max(MIN_SEGMENT_LENGTH, text1.length() / (threads * 4));
+        List<int[]> segments = new ArrayList<>();
+        int cut1 = 0, cut2 = 0;
+        // character offsets of the start of lines a[line1] and b[line2]
+        int line1 = 0, line2 = 0, offset1 = 0, offset2 = 0;
+        for (int k = 0; k < anchors.length; k += 2) {
+            for (; line1 < anchors[k]; line1++) {
+                offset1 += tokens.strings().get(a[line1]).length();
+            }
+            for (; line2 < anchors[k + 1]; line2++) {
+                offset2 += tokens.strings().get(b[line2]).length();
+            }
+            if (offset1 - cut1 >= targetLength) {
+                segments.add(new int[]{cut1, offset1, cut2, offset2});
+                cut1 = offset1;
+                cut2 = offset2;
+            }
+        }
+        segments.add(new int[]{cut1, text1.length(), cut2, text2.length()});
+        return segments;
+    }
+
+    /**
+     * Diffs a run of segments, splitting it in two until there's one segment left.
+     */
+    private class SegmentTask extends RecursiveTask<PackedDiff> {
+        private static final long serialVersionUID = 1L;
+
+        private final String text1, text2;
+        private final List<int[]> segments;
+        private final diff_match_patch.Budget[] portions;
+        private final int from, to;
+
+        SegmentTask(String text1, String text2, List<int[]> segments, diff_match_patch.Budget[] portions,
+                    int from, int to) {
+            this.text1 = text1;
+            this.text2 = text2;
+            this.segments = segments;
+            this.portions = portions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PackedDiff compute() {
+            if (to - from == 1) {
+                int[] segment = segments.get(from);
+                PackedDiff diff = new PackedDiff(text1, text2);
+                diff.append(engine.diff(text1.substring(segment[0], segment[1]),
+                        text2.substring(segment[2], segment[3]), portions[from]), segment[0], segment[2]);
+                return diff;
+            }
+            int middle = (from + to) >>> 1;
+            SegmentTask left = new SegmentTask(text1, text2, segments, portions, from, middle);
+            left.fork();
+            PackedDiff right = new SegmentTask(text1, text2, segments, portions, middle, to).compute();
+            PackedDiff diff = left.join();
+            // stitch, merging the hunks either side of the cut if they are the same operation
+            diff.append(right, 0, 0);
+            return diff;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package PDFDiffFX;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Patience diff: lines that occur exactly once in each text are matched up, the longest run of those
+ * matches that is in the same order in both texts becomes a set of anchors, and the ranges between anchors
+ * are diffed the same way in turn. Ranges without any unique lines fall back to Myers.
+ */
+class PatienceEngine extends AnchoredLineEngine {
+
+    /**
+     * @param dmp Diffs the blocks of changed lines
+     * @param words Whether changed lines are diffed a word at a time rather than a character at a time
+     */
+    PatienceEngine(diff_match_patch dmp, boolean words) {
+        super(dmp, words);
+    }
+
+    @Override
+    void diffLines(TextTokens tokens, diff_match_patch.Budget budget, TextTokens.Runs runs) {
+        int[] a = tokens.tokens1(), b = tokens.tokens2();
+        // occurrences of each token within the range being diffed, and its position in b; always all zero
+        // between ranges
+        int[] count1 = new int[tokens.uniqueCount()];
+        int[] count2 = new int[tokens.uniqueCount()];
+        int[] position2 = new int[tokens.uniqueCount()];
+
+        // an explicit stack rather than recursion, which could go as deep as there are lines
+        Deque<int[]> work = new ArrayDeque<>();
+        work.push(new int[]{DIFF, 0, a.length, 0, b.length});
+        while (!work.isEmpty()) {
+            int[] task = work.pop();
+            if (task[0] == EQUAL) {
+                runs.add(PackedDiff.EQUAL, task[1], task[2]);
+                continue;
+            }
+            int[] range = Arrays.copyOfRange(task, 1, 5);
+            int suffix = trim(a, b, range, runs);
+            work.push(new int[]{EQUAL, range[1], suffix});
+            int start1 = range[0], end1 = range[1], start2 = range[2], end2 = range[3];
+            if (start1 == end1 || start2 == end2) {
+                runs.add(PackedDiff.DELETE, start1, end1 - start1);
+                runs.add(PackedDiff.INSERT, start2, end2 - start2);
+                continue;
+            }
+
+            int[] anchors = anchors(a, start1, end1, b, start2, end2, count1, count2, position2);
+            if (anchors.length == 0) {
+                tokens.diff(start1, end1, start2, end2, budget, runs);
+                continue;
+            }
+            // the ranges between anchors, last first so that they come off the stack in order
+            int next1 = end1, next2 = end2;
+            for (int i = anchors.length - 2; i >= 0; i -= 2) {
+                work.push(new int[]{DIFF, anchors[i] + 1, next1, anchors[i + 1] + 1, next2});
+                work.push(new int[]{EQUAL, anchors[i], 1});
+                next1 = anchors[i];
+                next2 = anchors[i + 1];
+            }
+            work.push(new int[]{DIFF, start1, next1, start2, next2});
+        }
+    }
+
+    /**
+     * Finds the lines that occur once in each range, and the longest sequence of them that is in the same
+     * order in both.
+     * @param a The tokens of text1
+     * @param start1 The start of the range of a
+     * @param end1 The end of the range of a
+     * @param b The tokens of text2
+     * @param start2 The start of the range of b
+     * @param end2 The end of the range of b
+     * @param count1 Scratch space of one entry per unique token, all zero; left all zero
+     * @param count2 Scratch space like count1
+     * @param position2 Scratch space of one entry per unique token
+     * @return Pairs of positions (in a, in b) of the anchors, in order
+     */
+    static int[] anchors(int[] a, int start1, int end1, int[] b, int start2, int end2,
+                         int[] count1, int[] count2, int[] position2) {
+        for (int i = start1; i < end1; i++) {
+            count1[a[i]]++;
+        }
+        for (int j = start2; j < end2; j++) {
+            count2[b[j]]++;
+            position2[b[j]] = j;
+        }
+        // unique matches in order of their position in a
+        int[] matches1 = new int[Math.min(end1 - start1, end2 - start2)];
+        int[] matches2 = new int[matches1.length];
+        int matches = 0;
+        for (int i = start1; i < end1 && matches < matches1.length; i++) {
+            if (count1[a[i]] == 1 && count2[a[i]] == 1) {
+                matches1[matches] = i;
+                matches2[matches++] = position2[a[i]];
+            }
+        }
+        for (int i = start1; i < end1; i++) {
+            count1[a[i]] = 0;
+        }
+        for (int j = start2; j < end2; j++) {
+            count2[b[j]] = 0;
+        }
+
+        // longest increasing subsequence of the positions in b, by patience sorting: tails[k] is the match
+        // ending the best subsequence of length k + 1 found so far
+        int[] tails = new int[matches];
+        int[] previous = new int[matches];
+        int length = 0;
+        for (int m = 0; m < matches; m++) {
+            int low = 0, high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (matches2[tails[mid]] < matches2[m]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[m] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = m;
+            if (low == length) {
+                length++;
+            }
+        }
+        int[] anchors = new int[length * 2];
+        for (int m = length > 0 ? tails[length - 1] : -1, k = length - 1; m != -1; m = previous[m], k--) {
+            anchors[k * 2] = matches1[m];
+            anchors[k * 2 + 1] = matches2[m];
+        }
+        return anchors;
+    }
+}
@@ -0,0 +1,226 @@
+package PDFDiffFX;
+
+import de.redsix.pdfcompare.ImageWithDimension;
+import org.apache.pdfbox.util.Version;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An on-disk cache of rendered pages, so that a page that has been rendered before (e.g. a page of a baseline
+ * that is compared against many candidates) is not rendered again for the graphical diff.
+ * <p>
+ * Entries are keyed by the page's fingerprint (see PageFingerprints) together with the resolution, the color
+ * mode and the renderer settings, so a changed page or a different PDFBox version never hits a stale entry.
+ * Each entry is a single file:
+ * <pre>
+ *   "PDRC" | format version (int) | width, height in pixels (int) | width, height in points (float)
+ *   | length of the pixels (int) | pixels, 4 bytes each, deflated | SHA-256
+ * </pre>
+ * The pixels are the raster's ints exactly as PDFRenderer left them, unused top byte included, because
+ * DiffImage compares the raw ints: a page from the cache must compare equal to the same page rendered
+ * afresh. Rendered pages are mostly background, so they deflate to a few percent of their size. The trailing
+ * digest covers everything before it and is checked on every read; a corrupt entry is deleted and treated as
+ * a miss. As with TextCache, the cache is kept under a size limit by evicting the least recently used
+ * entries (see CacheDirectory). Several threads may use the cache at once.
+ */
+class RasterCache {
+
+    private static final int MAGIC = 0x50445243; // "PDRC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 * 7;
+    private static final String SUFFIX = ".rsc";
+    // pages as PDFRenderer renders them by default, which is how PdfComparator renders them
+    private static final String COLOR_MODE = "RGB";
+
+    // anything that changes the rendered page, other than the page and resolution, must be part of the key
+    private static final String RENDERER_SETTINGS =
+            "PDFRenderer/" + COLOR_MODE + "/pdfbox-" + Version.getVersion() + "/format-" + FORMAT_VERSION;
+
+    private final CacheDirectory directory;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param dir The directory holding the cache entries; created if it doesn't exist
+     * @param maxBytes The total size the cache may grow to before old entries are evicted
+     * @throws IOException if the directory cannot be created or listed
+     */
+    RasterCache(File dir, long maxBytes) throws IOException {
+        directory = new CacheDirectory(dir, SUFFIX, maxBytes);
+    }
+
+    /**
+     * Looks up a rendered page.
+     * @param pageDigest The page's digest, as from PageFingerprints.Digester
+     * @param dpi The resolution the page is rendered at
+     * @return The rendered page, with its size in points, or null if the page isn't in the cache
+     * @throws IOException if a corrupt entry cannot be deleted
+     */
+    ImageWithDimension get(byte[] pageDigest, int dpi) throws IOException {
+        Path entry = entryFor(pageDigest, dpi);
+        if (Files.exists(entry)) {
+            ImageWithDimension image = null;
+            try {
+                image = read(entry);
+            } catch (IOException | RuntimeException e) {
+                // unreadable entries are treated like corrupt ones
+            }
+            if (image != null) {
+                directory.touch(entry);
+                hits.incrementAndGet();
+                return image;
+            }
+            directory.delete(entry);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores a rendered page, then evicts old entries if the cache has grown past its limit. Only pages in
+     * the cache's color mode are stored.
+     * @param pageDigest The page's digest, as from PageFingerprints.Digester
+     * @param dpi The resolution the page was rendered at
+     * @param image The rendered page, with its size in points
+     * @throws IOException if the entry cannot be written
+     */
+    void put(byte[] pageDigest, int dpi, ImageWithDimension image) throws IOException {
+        BufferedImage pixels = image.bufferedImage;
+        if (pixels.getType() != BufferedImage.TYPE_INT_RGB) {
+            return;
+        }
+        int width = pixels.getWidth(), height = pixels.getHeight();
+        byte[] deflated = deflate(((DataBufferInt) pixels.getRaster().getDataBuffer()).getData(), width);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + deflated.length + DIGEST_LENGTH)
+                .order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(width).putInt(height)
+                .putFloat(image.width).putFloat(image.height).putInt(deflated.length).put(deflated);
+        MessageDigest digest = DocumentSource.newSha256();
+        digest.update(buffer.array(), 0, buffer.position());
+        buffer.put(digest.digest());
+
+        directory.write(entryFor(pageDigest, dpi), buffer.array());
+    }
+
+    /**
+     * @return The number of pages found in the cache
+     */
+    int hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of pages looked up but not found, which were rendered
+     */
+    int misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The path of a rendered page's cache entry
+     */
+    private Path entryFor(byte[] pageDigest, int dpi) {
+        MessageDigest digest = DocumentSource.newSha256();
+        digest.update(pageDigest);
+        digest.update((RENDERER_SETTINGS + "/" + dpi + "dpi").getBytes(StandardCharsets.UTF_8));
+        return directory.entry(TextCache.toHex(digest.digest()));
+    }
+
+    /**
+     * Deflates a raster's ints, row by row, 4 bytes each.
+     */
+    private static byte[] deflate(int[] pixels, int width) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer row = ByteBuffer.allocate(4 * width).order(ByteOrder.BIG_ENDIAN);
+        byte[] chunk = new byte[64 * 1024];
+        try {
+            for (int offset = 0; offset < pixels.length; offset += width) {
+                row.clear();
+                row.asIntBuffer().put(pixels, offset, width);
+                deflater.setInput(row.array());
+                while (!deflater.needsInput()) {
+                    out.write(chunk, 0, deflater.deflate(chunk));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads an entry and decodes it, checking its integrity first.
+     * @param entry The entry file
+     * @return The rendered page, or null if the entry is corrupt or in an unknown format
+     * @throws IOException if the entry cannot be read
+     */
+    private static ImageWithDimension read(Path entry) throws IOException {
+        byte[] bytes = Files.readAllBytes(entry);
+        if (bytes.length < HEADER_LENGTH + DIGEST_LENGTH) {
+            return null;
+        }
+        int bodyLength = bytes.length - DIGEST_LENGTH;
+
+        // integrity check
+        MessageDigest digest = DocumentSource.newSha256();
+        digest.update(bytes, 0, bodyLength);
+        byte[] expected = new byte[DIGEST_LENGTH];
+        System.arraycopy(bytes, bodyLength, expected, 0, DIGEST_LENGTH);
+        if (!MessageDigest.isEqual(digest.digest(), expected)) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, bodyLength).order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        int width = buffer.getInt(), height = buffer.getInt();
+        float pointsWidth = buffer.getFloat(), pointsHeight = buffer.getFloat();
+        int deflatedLength = buffer.getInt();
+        if (width <= 0 || height <= 0 || HEADER_LENGTH + deflatedLength != bodyLength) {
+            return null;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, HEADER_LENGTH, deflatedLength);
+            byte[] row = new byte[4 * width];
+            for (int y = 0; y < height; y++) {
+                for (int filled = 0; filled < row.length; ) {
+                    int n = inflater.inflate(row, filled, row.length - filled);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        return null;
+                    }
+                    filled += n;
+                }
+                ByteBuffer.wrap(row).order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(pixels, y * width, width);
+            }
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+        return new ImageWithDimension(image, pointsWidth, pointsHeight);
+    }
+}
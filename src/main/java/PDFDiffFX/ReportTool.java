@@ -1,22 +1,25 @@
 package PDFDiffFX;
 
-import de.redsix.pdfcompare.CompareResult;
-import de.redsix.pdfcompare.PdfComparator;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
-import org.apache.pdfbox.multipdf.Splitter;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.pdmodel.PDPage;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class ReportTool {
 
-    PDFTextStripper textStripper = new PDFTextStripper();
     diff_match_patch dmp = new diff_match_patch();
+    // the algorithm used for every textual diff
+    DiffEngine engine = new MyersEngine(dmp, false);
+    // hands out each diff's budget
+    DiffScheduler scheduler = new DiffScheduler(dmp, Long.MAX_VALUE);
+    // compares page pairs graphically; one worker by default
+    GraphicalDiffPool graphicalPool = new GraphicalDiffPool(1, null, GraphicalDiffPool.defaultAdmissionMB(), null);
+    // counters for the summary, e.g. diffs that ran out of budget
+    RunStats stats = new RunStats();
     String outFilePrefix;
 
     public ReportTool(String outFilePrefix) throws IOException {
@@ -24,72 +27,143 @@ public class ReportTool {
     }
 
     /**
-     * Generates a list of textual diffs in String form containing HTML that highlights differences.
-     * The list represents pages to make it easier to isolate and find diffs in a large document.
-     * These pages are then combined and written to a file.
-     * @param file1Pages The pages of the first document
-     * @param file2Pages The pages of the second document
-     * @throws IOException if an error is encountered while stripping text from the documents
+     * Generates a textual diff of each pair of pages, as HTML that highlights differences, and writes the
+     * pages that differ to a file. Splitting by page makes it easier to isolate and find diffs in a large
+     * document. Extraction, diffing and writing run as a pipeline, so differing pages are written while
+     * later pages are still being extracted.
+     * @param source1 The first document
+     * @param range1 The pages of the first document to compare; null for every page
+     * @param source2 The second document
+     * @param range2 The pages of the second document to compare; null for every page
+     * @param fingerprints Which page pairs are known to be unchanged and need not be diffed; may be null
+     * @param extractor Obtains the text of each document
+     * @return The text extracted from both documents, for use by the whole-document and summary reports
+     * @throws IOException if an error is encountered while stripping text or writing the report
      */
-    void generatePaginatedTextualDiff(
-            List<PDDocument> file1Pages, List<PDDocument> file2Pages) throws IOException {
-        if (file1Pages == null || file2Pages == null) {
-            AlertBox.display("Pagination error", "Error encountered while paginating documents");
-            return;
-        }
-        List<String> paginatedStringDiffs = new ArrayList<>();
-
-        int minPages = Math.min(file1Pages.size(), file2Pages.size());
-        for (int i = 0; i < minPages; i++) {
-            String page1 = textStripper.getText(file1Pages.get(i));
-            String page2 = textStripper.getText(file2Pages.get(i));
-
-            // HTML diff
-            String html = generateHtmlDiffFromStrings(page1, page2);
+    ExtractedText[] generatePaginatedTextualDiff(DocumentSource source1, PageRange range1, DocumentSource source2,
+                                                 PageRange range2, PageFingerprints fingerprints,
+                                                 TextExtractor extractor) throws IOException {
+        PaginatedDiffPipeline pipeline =
+                new PaginatedDiffPipeline(this, extractor, PaginatedDiffPipeline.DEFAULT_QUEUE_DEPTH);
+        return pipeline.run(source1, range1, source2, range2, fingerprints,
+                outFilePrefix + "_paginated_textual_diff.html");
+    }
 
-            // if any differences flagged, add page to report
-            if (html.contains("<del") || html.contains("<ins")) {
-                String header = "<br><p style=\"page-break-before:always; font-weight:bold; text-indent:20em;\">-----Page "
-                        + (i + 1) + "-----</p><br>";
-                paginatedStringDiffs.add(header + html);
-            }
-        }
-        // leftovers
-        if (file1Pages.size() > minPages) {
-            for (int i = minPages; i < file1Pages.size(); i++) {
-                String page = textStripper.getText(file1Pages.get(i));
-                // pages don't exist in file 2, so mark them as deletions
-                paginatedStringDiffs.add("<del style=\"background:#ffe6e6;\">" + page + "</del>");
+    /**
+     * Generates the paginated textual diff of two documents whose text has already been extracted, comparing
+     * pages as the alignment pairs them. Pages without a partner are reported whole, as deletions or
+     * insertions, where they fall in the alignment. The report file is only created if a difference is found.
+     * @param text1 The text of the first document's selected pages
+     * @param text2 The text of the second document's selected pages
+     * @param alignment Which pages are compared with which
+     * @param fingerprints Which page pairs are known to be unchanged and need not be diffed; may be null
+     * @param manifest The previous run's page diffs, which are reused and to which new ones are added; may be
+     *      null, and requires fingerprints otherwise
+     * @throws IOException if the report cannot be written
+     */
+    void generateAlignedTextualDiff(ExtractedText text1, ExtractedText text2, PageAlignment alignment,
+                                    PageFingerprints fingerprints, RunManifest manifest) throws IOException {
+        StringBuilder report = new StringBuilder();
+        for (int step = 0, pair = 0; step < alignment.size(); step++) {
+            int position1 = alignment.position1(step), position2 = alignment.position2(step);
+            String html;
+            if (position2 == -1) {
+                html = formatLeftoverPage(text1.getPage(position1), true);
+            } else if (position1 == -1) {
+                html = formatLeftoverPage(text2.getPage(position2), false);
+            } else if (fingerprints != null && fingerprints.isUnchanged(pair++)) {
+                html = null;
+            } else if (manifest == null) {
+                html = formatPageDiff(text1.pageNumber(position1), text1.getPage(position1),
+                        text2.getPage(position2));
+            } else {
+                byte[] digest1 = fingerprints.digest1(position1), digest2 = fingerprints.digest2(position2);
+                int pageIndex = text1.pageNumber(position1);
+                html = manifest.diff(digest1, digest2);
+                if (html == null) {
+                    diff_match_patch.Budget budget = scheduler.pageBudget(
+                            text1.getPage(position1).length() + text2.getPage(position2).length());
+                    html = diffPage(pageIndex, text1.getPage(position1), text2.getPage(position2), budget);
+                    // an approximate diff may come out better next time
+                    if (!budget.isExhausted()) {
+                        manifest.putDiff(digest1, digest2, html);
+                    }
+                }
+                html = html == null || html.isEmpty() ? null : pageHeader(pageIndex) + html;
             }
-        } else if (file2Pages.size() > minPages) {
-            for (int i = minPages; i < file1Pages.size(); i++) {
-                String page = textStripper.getText(file2Pages.get(i));
-                // pages don't exist in file 1, so mark them as insertions
-                paginatedStringDiffs.add("<ins style=\"background:#e6ffe6;\">" + page + "</ins>");
+            if (html != null) {
+                report.append(html);
             }
         }
-        // dump to file
-        if (paginatedStringDiffs.size() != 0) {
-            try (PrintWriter outWriter = new PrintWriter(outFilePrefix +"_paginated_textual_diff.html")) {
-                StringBuilder sb = new StringBuilder();
-                for (String s : paginatedStringDiffs) {
-                    sb.append(s);
-                }
-                outWriter.print(sb.toString());
+        if (report.length() > 0) {
+            try (PrintWriter outWriter = new PrintWriter(outFilePrefix + "_paginated_textual_diff.html")) {
+                outWriter.print(report);
             }
         }
     }
 
+    /**
+     * Formats the differences between one pair of pages for the paginated report.
+     * @param pageIndex The zero-based index of the page in the first document
+     * @param page1 The text of the page in the first document
+     * @param page2 The text of the page in the second document
+     * @return The HTML for the page, or null if the pages have no differences
+     */
+    String formatPageDiff(int pageIndex, String page1, String page2) {
+        String html = diffPage(pageIndex, page1, page2, scheduler.pageBudget(page1.length() + page2.length()));
+        return html == null ? null : pageHeader(pageIndex) + html;
+    }
+
+    /**
+     * Diffs one pair of pages.
+     * @param pageIndex The zero-based index of the page in the first document
+     * @param page1 The text of the page in the first document
+     * @param page2 The text of the page in the second document
+     * @param budget The time or work the diff may take
+     * @return The HTML of the differences, without the page header, or null if the pages have no differences
+     */
+    private String diffPage(int pageIndex, String page1, String page2, diff_match_patch.Budget budget) {
+        // HTML diff
+        String html = generateHtmlDiffFromStrings(page1, page2, "page " + (pageIndex + 1), budget);
+
+        // if any differences flagged, add page to report
+        return html.contains("<del") || html.contains("<ins") ? html : null;
+    }
+
+    /**
+     * @param pageIndex The zero-based index of the page in the first document
+     * @return The heading of a page in the paginated report
+     */
+    private static String pageHeader(int pageIndex) {
+        return "<br><p style=\"page-break-before:always; font-weight:bold; text-indent:20em;\">-----Page "
+                + (pageIndex + 1) + "-----</p><br>";
+    }
+
+    /**
+     * Formats a page that only exists in one of the documents for the paginated report.
+     * @param page The text of the page
+     * @param deleted true if the page exists only in file 1, false if only in file 2
+     * @return The HTML for the page
+     */
+    String formatLeftoverPage(String page, boolean deleted) {
+        // pages missing from the other file are marked as deletions or insertions
+        return deleted ? "<del style=\"background:#ffe6e6;\">" + page + "</del>"
+                : "<ins style=\"background:#e6ffe6;\">" + page + "</ins>";
+    }
+
     /**
      * Takes two strings and feeds them to the diff engine to generate HTML-formatted comparison.
      * @param text1 The "original" or "expected" text
      * @param text2 The "actual" text
+     * @param what Which diff this is, for the summary, e.g. "page 3"
+     * @param budget The time or work the diff may take
      * @return The HTML-formatted result
      */
-    private String generateHtmlDiffFromStrings(String text1, String text2) {
+    private String generateHtmlDiffFromStrings(String text1, String text2, String what,
+                                               diff_match_patch.Budget budget) {
 
-        LinkedList<diff_match_patch.Diff> diff = dmp.diff_main(text1, text2);
-        String html = dmp.diff_prettyHtml(diff);
+        PackedDiff diff = diff(text1, text2, what, budget);
+        String html = diff.prettyHtml();
 
         // do any desired cleanup/formatting
         html = html.replaceAll("&para;", "");
@@ -102,13 +176,13 @@ public class ReportTool {
      * Scrapes both files in their entirety and writes out the diffed text. While this is tedious to review, it
      * has the advantage that it is not thrown off by misaligned pages. If/when a better solution to this problem
      * is found, this can/should be replaced.
-     * @param file1 The first document
-     * @param file2 The second document
+     * @param text1 The extracted text of the first document
+     * @param text2 The extracted text of the second document
+     * @throws IOException if the report cannot be written
      */
-    void generateWholeTextualDiff(PDDocument file1, PDDocument file2) throws IOException {
-        String doc1 = textStripper.getText(file1);
-        String doc2 = textStripper.getText(file2);
-        String html = generateHtmlDiffFromStrings(doc1, doc2);
+    void generateWholeTextualDiff(ExtractedText text1, ExtractedText text2) throws IOException {
+        String html = generateHtmlDiffFromStrings(text1.getText(), text2.getText(), "whole document",
+                scheduler.documentBudget());
         String[] lines = html.split("(?<=<br>)");
         StringBuilder sb = new StringBuilder();
         for (String line : lines) { // streamify?
@@ -124,91 +198,88 @@ public class ReportTool {
     }
 
     /**
-     * Generates a PDDocument containing the result of a visual diff operation. Elements new to doc2 are
-     * colored green; elements missing from doc2 are colored red.
-     * @param doc1 The "expected" or "original" document
-     * @param doc2 The "actual" document
-     * @return The visual diff
-     */
-    private PDDocument graphicalDiffPage(PDDocument doc1, PDDocument doc2) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PDDocument result = null;
-        try {
-            InputStream is1 = new ByteArrayInputStream(pageToByteArray(doc1));
-            InputStream is2 = new ByteArrayInputStream(pageToByteArray(doc2));
-            CompareResult comp = new PdfComparator<>(is1, is2).compare();
-            // only add if different
-            if (!comp.writeTo(baos))
-                result = PDDocument.load(baos.toByteArray());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return result;
-    }
-
-    /**
-     * Converts a PDDocument to a byte array.
-     * @param doc The document to convert
-     * @return The byte array result
-     * @throws IOException if storing the document into the ByteArrayOutputStream fails
+     * Imports a page into another document with its rotation cleared, so that pages which differ only in
+     * rotation compare equal. importPage copies the page dictionary, so the source page is left untouched.
+     * @param dest The document to add the page to
+     * @param source The document containing the page
+     * @param pageIndex The index of the page in the source document
+     * @throws IOException if the page's content stream cannot be read
      */
-    private byte[] pageToByteArray(PDDocument doc) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        doc.save(baos);
-        return baos.toByteArray();
-    }
-
-    /**
-     * Splits a PDDocument into a list of individual pages.
-     * @param document The input document
-     * @return The list of pages
-     */
-    List<PDDocument> pdfToPages(PDDocument document) {
-        try {
-            return new ArrayList<>(new Splitter().split(document));
-        } catch (IOException e) {
-            AlertBox.display("Document error", "Error encountered while attempting to paginate document");
-            return null;
-        }
+    private void importUnrotatedPage(PDDocument dest, PDDocument source, int pageIndex) throws IOException {
+        PDPage page = dest.importPage(source.getPage(pageIndex));
+        page.setRotation(0);
     }
 
     /**
      * Generates a file containing the visual diff of two documents. Writes the result to a named file on disk.
-     * @param file1Pages The list of pages in document 1
-     * @param file2Pages The list of pages in document 2
+     * Pages are compared in place by index, so neither document is split into per-page copies. The pairs are
+     * compared on the worker threads of graphicalPool, but reported in page order. Only the selected pages of
+     * each document are compared, paired as the alignment says; pages without a partner are added to the end
+     * of the result whole.
+     * @param source1 The first document
+     * @param pages1 The zero-based indices of the pages of the first document to compare, in ascending order
+     * @param source2 The second document
+     * @param pages2 The zero-based indices of the pages of the second document to compare, in ascending order
+     * @param alignment Which pages are compared with which, by position in pages1 and pages2
+     * @param fingerprints Which page pairs are known to be unchanged and need not be rendered; may be null
      * @return A list of pages where differences were identified
      * @throws IOException if error encountered in writing to file
      */
-    List<Integer> generatePaginatedGraphicalDiff(List<PDDocument> file1Pages, List<PDDocument> file2Pages)
-            throws IOException {
+    List<Integer> generatePaginatedGraphicalDiff(DocumentSource source1, int[] pages1, DocumentSource source2,
+                                                 int[] pages2, PageAlignment alignment,
+                                                 PageFingerprints fingerprints) throws IOException {
 
+        List<int[]> pairs = new ArrayList<>();
+        for (int step = 0, pair = 0; step < alignment.size(); step++) {
+            int position1 = alignment.position1(step), position2 = alignment.position2(step);
+            if (position1 == -1 || position2 == -1) {
+                continue;
+            }
+            if (fingerprints != null && fingerprints.isUnchanged(pair++)) {
+                continue;
+            }
+            pairs.add(new int[]{pages1[position1], pages2[position2]});
+        }
+        List<PDDocument> pageDiffs = graphicalPool.compare(source1, source2, pairs);
         List<PDDocument> graphicalDiffPages = new ArrayList<>();
         List<Integer> diffArray = new ArrayList<>();
-        if (file1Pages != null && file2Pages != null) {
-            int minPages = Math.min(file1Pages.size(), file2Pages.size());
-            for (int i = 0; i < minPages; i++) {
-                PDDocument pageDiff = graphicalDiffPage(file1Pages.get(i), file2Pages.get(i));
-                // if differences found, add to list
-                if (pageDiff != null) {
-                    graphicalDiffPages.add(pageDiff);
-                    diffArray.add(i);
-                }
+        for (int k = 0; k < pairs.size(); k++) {
+            // if differences found, add to list
+            if (pageDiffs.get(k) != null) {
+                graphicalDiffPages.add(pageDiffs.get(k));
+                diffArray.add(pairs.get(k)[0]);
             }
-            // leftovers
-            if (file1Pages.size() > minPages) {
-                appendLeftoverGraphicalPages(graphicalDiffPages, file1Pages, diffArray, minPages);
-            } else if (file2Pages.size() > minPages) {
-                appendLeftoverGraphicalPages(graphicalDiffPages, file2Pages, diffArray, minPages);
+        }
+        // leftovers: pages in only one of the documents
+        List<Integer> leftoverSteps = new ArrayList<>();
+        for (int step = 0; step < alignment.size(); step++) {
+            int position1 = alignment.position1(step), position2 = alignment.position2(step);
+            if (position1 == -1 || position2 == -1) {
+                leftoverSteps.add(step);
+                diffArray.add(position1 != -1 ? pages1[position1] : pages2[position2]);
             }
         }
         // if difflist not empty, write to file
-        if (!graphicalDiffPages.isEmpty()) {
-            PDDocument graphicalDiff = pagesToPdf(graphicalDiffPages);
-            graphicalDiff.save(outFilePrefix + "_visual_diff.pdf");
-//            graphicalDiff.close();
-//            for (PDDocument page : graphicalDiffPages)
-//                page.close();
-            // TODO: figure out how to close the documents without breaking functionality
+        if (!graphicalDiffPages.isEmpty() || !leftoverSteps.isEmpty()) {
+            PDDocument doc1 = source1.getDocument(), doc2 = source2.getDocument();
+            try (PDDocument graphicalDiff = pagesToPdf(graphicalDiffPages)) {
+                if (graphicalDiff != null) {
+                    for (int step : leftoverSteps) {
+                        int position1 = alignment.position1(step);
+                        if (position1 != -1) {
+                            importUnrotatedPage(graphicalDiff, doc1, pages1[position1]);
+                        } else {
+                            importUnrotatedPage(graphicalDiff, doc2, pages2[alignment.position2(step)]);
+                        }
+                    }
+                    graphicalDiff.save(outFilePrefix + "_visual_diff.pdf");
+                }
+            } finally {
+                // the merged document reads from the page diffs while saving, so close them only afterwards
+                for (PDDocument page : graphicalDiffPages) {
+                    page.close();
+                }
+            }
         }
         return diffArray;
     }
@@ -232,46 +303,42 @@ public class ReportTool {
         return doc;
     }
 
-    /**
-     * When one document compared by generateGraphicalDiff is longer than the other, there will be leftover pages.
-     * Add those pages to the result list of differing pages.
-     * @param graphicalDiffPages The partial list of differing pages
-     * @param pages The pages of the larger document
-     * @param diffPageNums A list of the pages with identified differences
-     * @param startingPage The index of the page to start on
-     */
-    private void appendLeftoverGraphicalPages(
-            List<PDDocument> graphicalDiffPages, List<PDDocument> pages, List<Integer> diffPageNums, int startingPage) {
-        for (int i = startingPage; i < pages.size(); i++) {
-            graphicalDiffPages.add(pages.get(i));
-            diffPageNums.add(i);
-        }
-    }
-
     /**
      * Returns a textual summary of the differences found in the files.
-     * @param diff_list The semantic diff list generated by diff_match_patch
+     * @param diff The semantic diff generated by diff_match_patch
      * @param graphicalDiffPageArray A list of pages where visual diffs have been identified
+     * @param stats Counters gathered during the run; may be null
      * @return A string containing the summary report
      */
-    private String createSummary(List<diff_match_patch.Diff> diff_list, List<Integer> graphicalDiffPageArray) {
-        List<diff_match_patch.Diff> diff = new LinkedList<>(diff_list);
+    private String createSummary(PackedDiff diff, List<Integer> graphicalDiffPageArray, RunStats stats) {
         StringBuilder result = new StringBuilder();
         // text
-        if (diff.isEmpty()) {
+        if (diff.size() == 0) {
             result.append("No textual differences identified.\n");
         } else {
-            // this regex filters out matches that are just whitespace, including carriage returns and non-breaking spaces,
+            // this filters out matches that are just whitespace, including carriage returns and non-breaking spaces,
             // as well as the bulk of the list, which contains entries that are the same in both documents
-            diff.removeIf(d -> d.operation == diff_match_patch.Operation.EQUAL ||
-                    d.text.matches("[\\s\r\\u00A0\\u2003]+"));
-            if (diff.isEmpty()) {
+            StringBuilder differences = new StringBuilder();
+            for (int i = 0; i < diff.size(); i++) {
+                if (diff.operation(i) == PackedDiff.EQUAL || isBlank(diff.source(i), diff.start(i), diff.length(i))) {
+                    continue;
+                }
+                // trimmed as by String.trim, without copying the text out first
+                String source = diff.source(i);
+                int start = diff.start(i), end = start + diff.length(i);
+                while (start < end && source.charAt(start) <= ' ') {
+                    start++;
+                }
+                while (end > start && source.charAt(end - 1) <= ' ') {
+                    end--;
+                }
+                differences.append(diff_match_patch.Operation.values()[diff.operation(i)]).append(", \"")
+                        .append(source, start, end).append("\"\n");
+            }
+            if (differences.length() == 0) {
                 result.append("Textual differences found, but only in whitespace and/or non-printing characters.\n");
             } else {
-                result.append("Textual differences identified.\n");
-                for (diff_match_patch.Diff d : diff) {
-                    result.append( String.format( "%s, \"%s\"\n", d.operation, d.text.trim() ) );
-                }
+                result.append("Textual differences identified.\n").append(differences);
             }
         }
         // visual
@@ -284,12 +351,34 @@ public class ReportTool {
                 result.append( compressNumList(oneIndexedPages) );
             }
         }
+        // how the run went
+        String statsNote = stats == null ? "" : stats.describe();
+        if (!statsNote.isEmpty()) {
+            result.append("\n\n").append(statsNote.trim());
+        }
         String pageNumsNote = "\n\nNOTE: Page numbers are based on File 1 (the \"original\" document). If File 2 " +
                 "is longer or shorter than File 1, these page numbers will not necessarily match File 2.";
 
         return result.append(pageNumsNote).toString();
     }
 
+    /**
+     * @return true if the range is non-empty and consists only of whitespace, carriage returns and
+     *      non-breaking spaces
+     */
+    private static boolean isBlank(String text, int start, int length) {
+        if (length == 0) {
+            return false;
+        }
+        for (int i = start; i < start + length; i++) {
+            char c = text.charAt(i);
+            if (" \t\n\u000B\f\r\u00A0\u2003".indexOf(c) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Takes a list of numbers and compresses them into ranges.
      * E.g., [1,2,3,4,6,7,8,10] becomes [1-4,6-8,10]
@@ -326,16 +415,69 @@ public class ReportTool {
 
     /**
      * Displays the summary of differences to the user. If checkBoxCopySummary.checked(), write to file.
-     * @param doc1 The first document
-     * @param doc2 The second document
+     * @param text1 The extracted text of the first document
+     * @param text2 The extracted text of the second document
      * @param graphicalDiffPageNums The list of pages with graphical diffs, as reported earlier
-     * @throws IOException if text stripping results in an error
+     * @param stats Counters gathered during the run; may be null
+     * @throws IOException if the summary cannot be written to file
+     */
+    void showSummary(ExtractedText text1, ExtractedText text2, List<Integer> graphicalDiffPageNums, RunStats stats,
+                     boolean dump) throws IOException {
+        String text1String = text1.getText(), text2String = text2.getText();
+        PackedDiff semDiff = diff(text1String, text2String, "summary");
+        // a word diff is already at a readable granularity; the semantic cleanup would merge and split its
+        // changes back into fragments of words
+        if (!engine.wordLevel()) {
+            semDiff.cleanupSemantic();
+        }
+        displaySummary(createSummary(semDiff, graphicalDiffPageNums, stats), dump);
+    }
+
+    /**
+     * Displays the summary for two files that are byte-for-byte identical, in which case no other report
+     * is generated.
+     * @throws IOException if the summary cannot be written to file
+     */
+    void showIdenticalSummary(boolean dump) throws IOException {
+        displaySummary("The files are identical (byte-for-byte). No reports were generated.", dump);
+    }
+
+    /**
+     * Diffs two whole documents within the engine's time limit or work budget. See the other diff.
+     * @param text1 The "original" or "expected" text
+     * @param text2 The "actual" text
+     * @param what Which diff this is, for the summary
+     * @return The diff
+     */
+    private PackedDiff diff(String text1, String text2, String what) {
+        return diff(text1, text2, what, scheduler.documentBudget());
+    }
+
+    /**
+     * Diffs two strings within the given budget. A diff that runs out of budget is redone line by line, which
+     * is complete but approximate, and noted in the run stats.
+     * @param text1 The "original" or "expected" text
+     * @param text2 The "actual" text
+     * @param what Which diff this is, for the summary
+     * @param budget The time or work the diff may take; left exhausted if the diff is approximate
+     * @return The diff
+     */
+    private PackedDiff diff(String text1, String text2, String what, diff_match_patch.Budget budget) {
+        PackedDiff diff = engine.diff(text1, text2, budget);
+        if (budget.isExhausted()) {
+            diff = scheduler.fallback(text1, text2);
+            stats.diffOverBudget(what);
+        }
+        return diff;
+    }
+
+    /**
+     * Shows a summary to the user, and writes it to file if requested.
+     * @param summary The summary
+     * @param dump Whether to also write the summary to file
+     * @throws IOException if the summary cannot be written to file
      */
-    void showSummary(PDDocument doc1, PDDocument doc2, List<Integer> graphicalDiffPageNums, boolean dump)
-            throws IOException {
-        LinkedList<diff_match_patch.Diff> semDiff = dmp.diff_main(textStripper.getText(doc1), textStripper.getText(doc2));
-        dmp.diff_cleanupSemantic(semDiff);
-        String summary = createSummary(semDiff, graphicalDiffPageNums);
+    private void displaySummary(String summary, boolean dump) throws IOException {
         if (dump) {
             String summaryFile = outFilePrefix + "_summary.txt";
             try ( PrintWriter pw = new PrintWriter( new File(summaryFile) ) ) {
@@ -343,7 +485,7 @@ public class ReportTool {
                 pw.println(summary);
             }
         }
-        AlertBox.display( "Summary Report", createSummary(semDiff, graphicalDiffPageNums) );
+        AlertBox.display( "Summary Report", summary );
     }
 
 }
@@ -0,0 +1,282 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.util.Version;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The results of a previous run, kept so that a re-run against mostly the same pages (e.g. after a small
+ * edit to a template) only extracts and diffs the pages that changed.
+ * <p>
+ * Everything is keyed by page fingerprint (see PageFingerprints), never by page number, so results stay
+ * valid when pages move or the other document changes: the text of each page, and the paginated report's
+ * HTML for each pair of pages, which is empty when the pair has no differences. Text is only valid for the
+ * extractor that produced it and diffs for the diff settings that produced them, so entries made under
+ * other settings are dropped on load. The file is laid out as
+ * <pre>
+ *   "PDRM" | format version (int) | text settings | diff settings
+ *   | page count (int) | { digest (32 bytes) | text }*
+ *   | pair count (int) | { digest1 (32 bytes) | digest2 (32 bytes) | html }*
+ *   | SHA-256 of everything before it
+ * </pre>
+ * where each string is its length in bytes (int) followed by its UTF-8 encoding. A manifest that is corrupt
+ * or in another format is ignored, as if there were none. Saving keeps only the entries the run used, so
+ * the manifest doesn't grow as a document is edited over and over.
+ */
+class RunManifest {
+
+    private static final int MAGIC = 0x5044524D; // "PDRM"
+    private static final int FORMAT_VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+
+    // anything that changes the extracted text must be part of this
+    private static final String TEXT_SETTINGS = "PDFTextStripper/defaults/pdfbox-" + Version.getVersion();
+
+    private final Path file;
+    private final String diffSettings;
+    // entries from the previous run, by hex digest (of a page, or of both pages of a pair)
+    private final Map<String, String> texts = new HashMap<>();
+    private final Map<String, String> diffs = new HashMap<>();
+    // entries used or made by this run, which are the ones saved
+    private final Map<String, String> keptTexts = new LinkedHashMap<>();
+    private final Map<String, String> keptDiffs = new LinkedHashMap<>();
+    private int textHits = 0;
+    private int diffHits = 0;
+
+    private RunManifest(Path file, String diffSettings) {
+        this.file = file;
+        this.diffSettings = diffSettings;
+    }
+
+    /**
+     * Reads a manifest, or starts an empty one if the file doesn't exist or can't be used.
+     * @param file The manifest file
+     * @param diffSettings Everything that affects the result of a page diff, e.g. the diff engine; diffs
+     *      recorded under other settings are dropped
+     * @return The manifest
+     */
+    static RunManifest load(File file, String diffSettings) {
+        RunManifest manifest = new RunManifest(file.toPath(), diffSettings);
+        if (!file.exists()) {
+            return manifest;
+        }
+        try {
+            manifest.read();
+        } catch (IOException | RuntimeException e) {
+            // unreadable manifests are treated like missing ones
+            manifest.texts.clear();
+            manifest.diffs.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * Looks up the text of a page.
+     * @param digest The page's digest
+     * @return The page's text, or null if the manifest doesn't hold it
+     */
+    String text(byte[] digest) {
+        String key = TextCache.toHex(digest);
+        String text = texts.get(key);
+        if (text != null) {
+            textHits++;
+            keptTexts.put(key, text);
+        }
+        return text;
+    }
+
+    /**
+     * Records the text of a page.
+     * @param digest The page's digest
+     * @param text The page's text
+     */
+    void putText(byte[] digest, String text) {
+        keptTexts.put(TextCache.toHex(digest), text);
+    }
+
+    /**
+     * Looks up the differences between a pair of pages.
+     * @param digest1 The digest of the page in the first document
+     * @param digest2 The digest of the page in the second document
+     * @return The HTML of the differences, without the page header; an empty string if the pages have no
+     *      differences, or null if the manifest doesn't hold the pair
+     */
+    String diff(byte[] digest1, byte[] digest2) {
+        String key = TextCache.toHex(digest1) + TextCache.toHex(digest2);
+        String html = diffs.get(key);
+        if (html != null) {
+            diffHits++;
+            keptDiffs.put(key, html);
+        }
+        return html;
+    }
+
+    /**
+     * Records the differences between a pair of pages.
+     * @param digest1 The digest of the page in the first document
+     * @param digest2 The digest of the page in the second document
+     * @param html The HTML of the differences, without the page header; null if the pages have no differences
+     */
+    void putDiff(byte[] digest1, byte[] digest2, String html) {
+        keptDiffs.put(TextCache.toHex(digest1) + TextCache.toHex(digest2), html == null ? "" : html);
+    }
+
+    /**
+     * @return The number of pages whose text was found in the manifest
+     */
+    int textHits() {
+        return textHits;
+    }
+
+    /**
+     * @return The number of page pairs whose differences were found in the manifest
+     */
+    int diffHits() {
+        return diffHits;
+    }
+
+    /**
+     * Writes the entries this run used or made, replacing the previous manifest.
+     * @throws IOException if the manifest cannot be written
+     */
+    void save() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        // write to a temporary file and move it into place, so a failed save leaves the old manifest intact
+        Path tmp = Files.createTempFile(dir, "manifest", ".tmp");
+        try {
+            MessageDigest digest = DocumentSource.newSha256();
+            try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(tmp));
+                 DigestOutputStream digesting = new DigestOutputStream(raw, digest)) {
+                DataOutputStream out = new DataOutputStream(digesting);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, TEXT_SETTINGS);
+                writeString(out, diffSettings);
+                out.writeInt(keptTexts.size());
+                for (Map.Entry<String, String> entry : keptTexts.entrySet()) {
+                    out.write(fromHex(entry.getKey()));
+                    writeString(out, entry.getValue());
+                }
+                out.writeInt(keptDiffs.size());
+                for (Map.Entry<String, String> entry : keptDiffs.entrySet()) {
+                    out.write(fromHex(entry.getKey()));
+                    writeString(out, entry.getValue());
+                }
+                out.flush();
+                digesting.on(false);
+                out.write(digest.digest());
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads the manifest file, checking its integrity first.
+     * @throws IOException if the file cannot be read, or is corrupt or in an unknown format
+     */
+    private void read() throws IOException {
+        long size = Files.size(file);
+        if (size < 8 + DIGEST_LENGTH) {
+            throw new IOException("Manifest too short");
+        }
+        MessageDigest digest = DocumentSource.newSha256();
+        Map<String, String> texts = new HashMap<>(), diffs = new HashMap<>();
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file));
+             DigestInputStream digesting = new DigestInputStream(raw, digest)) {
+            DataInputStream in = new DataInputStream(digesting);
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a manifest of this version");
+            }
+            boolean textsValid = readString(in, size).equals(TEXT_SETTINGS);
+            boolean diffsValid = readString(in, size).equals(diffSettings);
+            for (int n = in.readInt(); n > 0; n--) {
+                String key = readDigest(in, 1);
+                String text = readString(in, size);
+                if (textsValid) {
+                    texts.put(key, text);
+                }
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                String key = readDigest(in, 2);
+                String html = readString(in, size);
+                if (diffsValid) {
+                    diffs.put(key, html);
+                }
+            }
+            digesting.on(false);
+            byte[] expected = new byte[DIGEST_LENGTH];
+            in.readFully(expected);
+            if (in.read() != -1 || !MessageDigest.isEqual(digest.digest(), expected)) {
+                throw new IOException("Corrupt manifest");
+            }
+        }
+        this.texts.putAll(texts);
+        this.diffs.putAll(diffs);
+    }
+
+    /**
+     * Reads one or more digests and returns them as a single hex key.
+     */
+    private static String readDigest(DataInputStream in, int count) throws IOException {
+        byte[] digests = new byte[DIGEST_LENGTH * count];
+        in.readFully(digests);
+        return TextCache.toHex(digests);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param limit The size of the file, which no string can be longer than
+     */
+    private static String readString(DataInputStream in, long limit) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > limit) {
+            throw new IOException("Corrupt manifest");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param hex A lowercase hexadecimal string, as from TextCache.toHex
+     * @return The bytes it represents
+     */
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16), low = Character.digit(hex.charAt(2 * i + 1), 16);
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+}
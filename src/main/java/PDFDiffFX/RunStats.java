@@ -0,0 +1,80 @@
+package PDFDiffFX;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counters describing how a run went, as opposed to what differences it found. They are gathered by the
+ * stages of a run and reported at the end of the summary.
+ */
+class RunStats {
+
+    // how many of a list of diffs or pages to name in the summary
+    private static final int MAX_LISTED = 10;
+
+    // page pairs with matching fingerprints, which were neither extracted twice, diffed nor rendered
+    int unchangedPages = 0;
+    // pages of each document left without a partner when pages are aligned by content; -1 when not aligned
+    int unpairedPages1 = -1;
+    int unpairedPages2 = -1;
+    // pages whose text, and page pairs whose diff, came from the previous run's manifest; -1 without one
+    int reusedPageTexts = -1;
+    int reusedPageDiffs = -1;
+    // pages of the graphical diff found in and missing from the raster cache; -1 without one
+    int rasterCacheHits = -1;
+    int rasterCacheMisses = -1;
+    // page pairs screened at low resolution, and those of them escalated to full resolution; -1 without
+    // screening
+    int screenedPairs = -1;
+    int escalatedPairs = -1;
+    // diffs that ran out of time or work budget and were redone line by line, e.g. "page 3"; filled in by
+    // whichever thread ran the diff
+    private final List<String> overBudgetDiffs = new ArrayList<>();
+
+    /**
+     * Notes a diff that ran out of time or work budget, and so fell back to an approximate, line-by-line
+     * result.
+     * @param what Which diff it was, e.g. "page 3" or "whole document"
+     */
+    synchronized void diffOverBudget(String what) {
+        overBudgetDiffs.add(what);
+    }
+
+    /**
+     * @return The lines to add to the summary, or an empty string if there is nothing to report
+     */
+    synchronized String describe() {
+        StringBuilder result = new StringBuilder();
+        if (unchangedPages > 0) {
+            result.append(String.format("%d page pair(s) had identical content fingerprints and were skipped.%n",
+                    unchangedPages));
+        }
+        if (unpairedPages1 >= 0) {
+            result.append(String.format("Pages were paired by content: %d page(s) appear only in file 1 and %d only "
+                    + "in file 2.%n", unpairedPages1, unpairedPages2));
+        }
+        if (reusedPageTexts >= 0) {
+            result.append(String.format("The run manifest supplied the text of %d page(s) and the diffs of %d page "
+                    + "pair(s).%n", reusedPageTexts, reusedPageDiffs));
+        }
+        if (rasterCacheHits >= 0) {
+            result.append(String.format("The raster cache held %d rendered page(s); %d page(s) were rendered.%n",
+                    rasterCacheHits, rasterCacheMisses));
+        }
+        if (screenedPairs >= 0) {
+            result.append(String.format("Screening cleared %d of %d page pair(s) at low resolution; %d were "
+                    + "escalated to full resolution.%n", screenedPairs - escalatedPairs, screenedPairs,
+                    escalatedPairs));
+        }
+        if (!overBudgetDiffs.isEmpty()) {
+            int shown = Math.min(overBudgetDiffs.size(), MAX_LISTED);
+            String listed = String.join(", ", overBudgetDiffs.subList(0, shown));
+            if (shown < overBudgetDiffs.size()) {
+                listed += " and " + (overBudgetDiffs.size() - shown) + " more";
+            }
+            result.append(String.format("%d diff(s) ran out of time or work budget and are approximate, showing "
+                    + "changed lines whole: %s.%n", overBudgetDiffs.size(), listed));
+        }
+        return result.toString();
+    }
+}
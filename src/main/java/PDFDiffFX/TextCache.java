@@ -0,0 +1,186 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.util.Version;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * An on-disk cache of extracted text, so that a document that has been seen before (e.g. a baseline that
+ * is diffed against many candidates) doesn't need to be parsed again.
+ * <p>
+ * Entries are keyed by the SHA-256 of the input file together with the extractor settings, so a changed
+ * file or a different PDFBox version never hits a stale entry. Each entry is a single file:
+ * <pre>
+ *   "PDTC" | format version (int) | page count n (int) | n + 1 page offsets (int) | text (UTF-16) | SHA-256
+ * </pre>
+ * The layout is fixed-width, so an entry is read by memory-mapping it and viewing the text in place. The
+ * trailing digest covers everything before it and is checked on every read; a corrupt entry is deleted and
+ * treated as a miss. The cache is kept under a size limit by evicting the least recently used entries (see
+ * CacheDirectory).
+ */
+class TextCache {
+
+    private static final int MAGIC = 0x50445443; // "PDTC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+    private static final String SUFFIX = ".txc";
+
+    // anything that changes the extracted text must be part of the key
+    private static final String EXTRACTOR_SETTINGS =
+            "PDFTextStripper/defaults/pdfbox-" + Version.getVersion() + "/format-" + FORMAT_VERSION;
+
+    private final CacheDirectory directory;
+    private final String settings;
+
+    /**
+     * @param dir The directory holding the cache entries; created if it doesn't exist
+     * @param maxBytes The total size the cache may grow to before old entries are evicted
+     * @throws IOException if the directory cannot be created or listed
+     */
+    TextCache(File dir, long maxBytes) throws IOException {
+        this(dir, maxBytes, EXTRACTOR_SETTINGS);
+    }
+
+    /**
+     * @param dir The directory holding the cache entries; created if it doesn't exist
+     * @param maxBytes The total size the cache may grow to before old entries are evicted
+     * @param settings The extractor settings the entries are keyed by, in place of the current ones
+     * @throws IOException if the directory cannot be created or listed
+     */
+    TextCache(File dir, long maxBytes, String settings) throws IOException {
+        directory = new CacheDirectory(dir, SUFFIX, maxBytes);
+        this.settings = settings;
+    }
+
+    /**
+     * Looks up the text of a document.
+     * @param source The document
+     * @return The cached text, or null if the document isn't in the cache
+     * @throws IOException if the document cannot be hashed
+     */
+    ExtractedText get(DocumentSource source) throws IOException {
+        Path entry = entryFor(source);
+        if (!Files.exists(entry)) {
+            return null;
+        }
+        ExtractedText text = null;
+        try {
+            text = read(entry);
+        } catch (IOException | RuntimeException e) {
+            // unreadable entries are treated like corrupt ones
+        }
+        if (text != null) {
+            directory.touch(entry);
+            return text;
+        }
+        directory.delete(entry);
+        return null;
+    }
+
+    /**
+     * Stores the text of a document, then evicts old entries if the cache has grown past its limit.
+     * @param source The document
+     * @param text The text extracted from it
+     * @throws IOException if the entry cannot be written
+     */
+    void put(DocumentSource source, ExtractedText text) throws IOException {
+        Path entry = entryFor(source);
+        String content = text.getText();
+        int pageCount = text.pageCount();
+        int headerLength = 4 * (3 + pageCount + 1);
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + 2 * content.length() + DIGEST_LENGTH)
+                .order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            buffer.putInt(text.pageStart(i));
+        }
+        buffer.putInt(content.length());
+        buffer.asCharBuffer().put(content);
+        buffer.position(headerLength + 2 * content.length());
+        MessageDigest digest = DocumentSource.newSha256();
+        digest.update(buffer.array(), 0, buffer.position());
+        buffer.put(digest.digest());
+
+        directory.write(entry, buffer.array());
+    }
+
+    /**
+     * @param source The document
+     * @return The path of the document's cache entry
+     * @throws IOException if the document cannot be hashed
+     */
+    private Path entryFor(DocumentSource source) throws IOException {
+        MessageDigest digest = DocumentSource.newSha256();
+        digest.update(source.sha256());
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        return directory.entry(toHex(digest.digest()));
+    }
+
+    /**
+     * Memory-maps an entry and decodes it, checking its integrity first.
+     * @param entry The entry file
+     * @return The cached text, or null if the entry is corrupt or in an unknown format
+     * @throws IOException if the entry cannot be read
+     */
+    private ExtractedText read(Path entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 12 + 4 + DIGEST_LENGTH || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int bodyLength = (int) size - DIGEST_LENGTH;
+
+            // integrity check
+            MessageDigest digest = DocumentSource.newSha256();
+            ByteBuffer body = map.duplicate();
+            body.limit(bodyLength);
+            digest.update(body);
+            byte[] expected = new byte[DIGEST_LENGTH];
+            map.position(bodyLength);
+            map.get(expected);
+            if (!MessageDigest.isEqual(digest.digest(), expected)) {
+                return null;
+            }
+
+            map.position(0);
+            if (map.getInt() != MAGIC || map.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            int pageCount = map.getInt();
+            int[] offsets = new int[pageCount + 1];
+            for (int i = 0; i <= pageCount; i++) {
+                offsets[i] = map.getInt();
+            }
+            int textLength = offsets[pageCount];
+            if (map.position() + 2 * textLength != bodyLength) {
+                return null;
+            }
+            char[] chars = new char[textLength];
+            map.asCharBuffer().get(chars);
+            return new ExtractedText(new String(chars), offsets);
+        }
+    }
+
+    /**
+     * @param bytes The bytes to format
+     * @return The bytes as a lowercase hexadecimal string
+     */
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
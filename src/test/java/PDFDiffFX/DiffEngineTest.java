@@ -0,0 +1,142 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that every diff engine covers both texts, in character and word mode, and that the anchored engines
+ * anchor where they should.
+ */
+class DiffEngineTest {
+
+    private static final String[] ENGINES = {"myers", "patience", "histogram"};
+
+    private final diff_match_patch dmp = new diff_match_patch();
+
+    @Test
+    void everyEngineCoversBothTexts() {
+        Random random = new Random(14);
+        for (String name : ENGINES) {
+            for (boolean words : new boolean[]{false, true}) {
+                DiffEngine engine = DiffEngine.create(name, dmp, words);
+                for (int i = 0; i < 3000; i++) {
+                    String text1 = RandomTexts.lines(random, i % 10 == 0 ? 200 : 20);
+                    String text2 = RandomTexts.mutateLines(random, text1);
+                    PackedDiff diff = engine.diff(text1, text2, dmp.diff_newBudget());
+                    String context = name + (words ? "/words: " : "/chars: ") + text1 + " -> " + text2;
+                    assertContiguous(diff, context);
+                    LinkedList<diff_match_patch.Diff> diffs = diff.unpack();
+                    assertEquals(text1, dmp.diff_text1(diffs), context);
+                    assertEquals(text2, dmp.diff_text2(diffs), context);
+                }
+            }
+        }
+    }
+
+    @Test
+    void movedUniqueLinesAreDeletedAndInserted() {
+        String text1 = "one\ntwo\nthree\nfour\nfive\n", text2 = "one\nthree\nfour\nfive\ntwo\n";
+        LinkedList<diff_match_patch.Diff> expected = new LinkedList<>();
+        expected.add(new diff_match_patch.Diff(diff_match_patch.Operation.EQUAL, "one\n"));
+        expected.add(new diff_match_patch.Diff(diff_match_patch.Operation.DELETE, "two\n"));
+        expected.add(new diff_match_patch.Diff(diff_match_patch.Operation.EQUAL, "three\nfour\nfive\n"));
+        expected.add(new diff_match_patch.Diff(diff_match_patch.Operation.INSERT, "two\n"));
+        for (String name : new String[]{"patience", "histogram"}) {
+            DiffEngine engine = DiffEngine.create(name, dmp, false);
+            assertEquals(expected, engine.diff(text1, text2, dmp.diff_newBudget()).unpack(), name);
+        }
+    }
+
+    @Test
+    void histogramAnchorsRepeatedBoilerplate() {
+        // every line occurs three times, so there is nothing for patience to anchor on
+        String paragraph = "Terms and conditions apply.\nSee the schedule.\nSigned\n";
+        String text1 = paragraph + paragraph + paragraph;
+        String text2 = paragraph + paragraph.replace("schedule", "annex") + paragraph;
+        TextTokens tokens = TextTokens.lines(text1, text2);
+        int[] a = tokens.tokens1(), b = tokens.tokens2();
+        int[] unique = new int[tokens.uniqueCount()];
+        assertEquals(0, PatienceEngine.anchors(a, 0, a.length, b, 0, b.length,
+                new int[unique.length], new int[unique.length], unique).length);
+
+        TextTokens.Runs runs = new TextTokens.Runs();
+        new HistogramEngine(dmp, false).diffLines(tokens, dmp.diff_newBudget(), runs);
+        // only the changed line of the second copy is replaced
+        int[] expected = {PackedDiff.EQUAL, 0, 4, PackedDiff.DELETE, 4, 1, PackedDiff.INSERT, 4, 1,
+                PackedDiff.EQUAL, 5, 4};
+        assertArrayEquals(expected, runs.toArray(), () -> Arrays.toString(runs.toArray()));
+    }
+
+    @Test
+    void deepSplitsDontUseTheCallStack() throws InterruptedException {
+        // unchanged lines alternate with changed ones, so each split leaves everything after it to split
+        // again: as deep as there are lines, were the engines recursive
+        StringBuilder text1 = new StringBuilder(), text2 = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text1.append("kept ").append(i).append('\n').append("old ").append(i).append('\n');
+            text2.append("kept ").append(i).append('\n').append("new ").append(i).append('\n');
+        }
+        for (String name : new String[]{"patience", "histogram"}) {
+            DiffEngine engine = DiffEngine.create(name, dmp, false);
+            assertCoversOnSmallStack(engine, text1.toString(), text2.toString());
+        }
+    }
+
+    @Test
+    void oneChangedLineDiffsOnAFreshThread() throws InterruptedException {
+        // the change between anchors is one line against one line, which must not reach bisect
+        for (String name : ENGINES) {
+            for (boolean words : new boolean[]{false, true}) {
+                assertCoversOnSmallStack(DiffEngine.create(name, dmp, words), "a\nb\nc\n", "a\nX\nc\n");
+            }
+        }
+    }
+
+    /**
+     * Asserts that each hunk starts where the one before it in the same text ended, as PackedDiff's cleanups
+     * rely on.
+     */
+    private static void assertContiguous(PackedDiff diff, String context) {
+        int pos1 = 0, pos2 = 0;
+        for (int i = 0; i < diff.size(); i++) {
+            if (diff.operation(i) == PackedDiff.INSERT) {
+                assertEquals(pos2, diff.start(i), context);
+                pos2 += diff.length(i);
+            } else {
+                assertEquals(pos1, diff.start(i), context);
+                pos1 += diff.length(i);
+                if (diff.operation(i) == PackedDiff.EQUAL) {
+                    pos2 += diff.length(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Diffs on a new thread with a small stack, whose pooled diff workspace hasn't grown yet, and asserts the
+     * diff covers both texts.
+     */
+    private void assertCoversOnSmallStack(DiffEngine engine, String text1, String text2)
+            throws InterruptedException {
+        Object[] result = new Object[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                result[0] = engine.diff(text1, text2, dmp.diff_newBudget()).unpack();
+            } catch (Throwable t) {
+                result[0] = t;
+            }
+        }, "small stack", 128 * 1024);
+        thread.start();
+        thread.join();
+        assertTrue(result[0] instanceof LinkedList, () -> String.valueOf(result[0]));
+        @SuppressWarnings("unchecked")
+        LinkedList<diff_match_patch.Diff> diffs = (LinkedList<diff_match_patch.Diff>) result[0];
+        assertEquals(text1, dmp.diff_text1(diffs));
+        assertEquals(text2, dmp.diff_text2(diffs));
+    }
+}
@@ -0,0 +1,294 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the changes made to diff_match_patch's diff: its work budget, its line mode with the line tokens
+ * behind it, and its vectorized equality scans and growable V arrays, which must give exactly what the
+ * original character-at-a-time code gives.
+ */
+class DiffMatchPatchTest {
+
+    // lengths of common runs either side of the scalar scan, the backward block and the chunk length
+    private static final int[] RUN_LENGTHS = {0, 1, 15, 16, 17, 63, 64, 65, 79, 80, 81, 127, 128, 129, 4095, 4096,
+            4097, 4111, 4160, 8191, 8192, 8193};
+
+    @Test
+    void diffBudgetGivesRepeatableResults() {
+        diff_match_patch dmp = new diff_match_patch();
+        dmp.Diff_Budget = 50;
+        String text1 = "the quick brown fox jumps over the lazy dog", text2 = "a quick brown cat leaps over one lazy dog";
+        diff_match_patch.Budget budget = dmp.diff_newBudget();
+        LinkedList<diff_match_patch.Diff> first = dmp.diff_main(text1, text2, false, budget);
+        assertTrue(budget.isExhausted());
+        assertEquals(first, dmp.diff_main(text1, text2, false, dmp.diff_newBudget()));
+
+        dmp.Diff_Budget = 1_000_000;
+        budget = dmp.diff_newBudget();
+        dmp.diff_main(text1, text2, false, budget);
+        assertFalse(budget.isExhausted());
+    }
+
+    @Test
+    void lineModeCopesWithManyUniqueLines() {
+        // far more unique lines than fit in a char each, with changes spread throughout
+        StringBuilder text1 = new StringBuilder(), text2 = new StringBuilder();
+        for (int i = 0; i < 150000; i++) {
+            text1.append("clause ").append(i).append(" of the agreement\n");
+            if (i % 500 != 7) {
+                text2.append("clause ").append(i).append(i % 700 == 3 ? " of this agreement\n" : " of the agreement\n");
+            }
+        }
+        diff_match_patch dmp = new diff_match_patch();
+        dmp.Diff_Budget = 20_000_000;
+        diff_match_patch.Budget budget = dmp.diff_newBudget();
+        LinkedList<diff_match_patch.Diff> diffs = dmp.diff_main(text1.toString(), text2.toString(), true, budget);
+        assertFalse(budget.isExhausted());
+        assertEquals(text1.toString(), dmp.diff_text1(diffs));
+        assertEquals(text2.toString(), dmp.diff_text2(diffs));
+        assertTrue(dmp.diff_levenshtein(diffs) < 10000);
+    }
+
+    @Test
+    void oneChangedLineDiffsOnAFreshThread() throws InterruptedException {
+        // a single token against a single token must not reach bisect, whose V arrays are too short for it;
+        // only a thread whose pooled arrays haven't grown yet shows it
+        String text1 = "a\nb\nc\n", text2 = "a\nX\nc\n";
+        int[][] runs = new int[2][];
+        Throwable[] thrown = new Throwable[1];
+        Thread thread = new Thread(() -> {
+            try {
+                diff_match_patch.Budget budget = new diff_match_patch().diff_newBudget();
+                runs[0] = TextTokens.lines(text1, text2).diff(budget);
+                runs[1] = TextTokens.words(text1, text2).diff(budget);
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNull(thrown[0]);
+        int[] expected = {
+                PackedDiff.EQUAL, 0, 1, PackedDiff.DELETE, 1, 1, PackedDiff.INSERT, 1, 1, PackedDiff.EQUAL, 2, 1};
+        assertArrayEquals(expected, runs[0]);
+        // words: "a", "\n", "b" or "X", "\n", "c", "\n"
+        assertArrayEquals(new int[]{
+                PackedDiff.EQUAL, 0, 2, PackedDiff.DELETE, 2, 1, PackedDiff.INSERT, 2, 1, PackedDiff.EQUAL, 3, 3},
+                runs[1]);
+    }
+
+    @Test
+    void commonPrefixAndSuffixMatchAScalarScan() {
+        Random random = new Random(17);
+        diff_match_patch dmp = new diff_match_patch();
+        diff_match_patch scalar = new ScalarDiffMatchPatch();
+        for (int i = 0; i < 20000; i++) {
+            int common = i < 2 * RUN_LENGTHS.length ? RUN_LENGTHS[i / 2]
+                    : random.nextBoolean() ? RUN_LENGTHS[random.nextInt(RUN_LENGTHS.length)] + random.nextInt(3)
+                    : random.nextInt(200);
+            String run = RandomTexts.text(random, common, "ab");
+            // the texts differ right after the common run, or one of them ends there
+            String tail1 = random.nextInt(8) == 0 ? "" : "x" + RandomTexts.text(random, random.nextInt(20), "ab");
+            String tail2 = random.nextInt(8) == 0 ? "" : "y" + RandomTexts.text(random, random.nextInt(20), "ab");
+            String text1 = run + tail1, text2 = run + tail2;
+            assertEquals(scalar.diff_commonPrefix(text1, text2), dmp.diff_commonPrefix(text1, text2));
+            String reversed1 = new StringBuilder(text1).reverse().toString();
+            String reversed2 = new StringBuilder(text2).reverse().toString();
+            assertEquals(scalar.diff_commonSuffix(reversed1, reversed2), dmp.diff_commonSuffix(reversed1, reversed2));
+
+            // and the array versions bisect follows snakes with, from inside the arrays
+            char[] chars1 = ("pq" + text1 + "rs").toCharArray(), chars2 = ("t" + text2 + "uvw").toCharArray();
+            int n = Math.min(text1.length(), text2.length());
+            assertEquals(scalar.diff_commonPrefix(text1, text2),
+                    diff_match_patch.commonPrefix(chars1, 2, chars2, 1, n));
+            chars1 = ("pq" + reversed1 + "rs").toCharArray();
+            chars2 = ("t" + reversed2 + "uvw").toCharArray();
+            assertEquals(scalar.diff_commonSuffix(reversed1, reversed2),
+                    diff_match_patch.commonSuffix(chars1, 2 + reversed1.length(), chars2, 1 + reversed2.length(), n));
+        }
+    }
+
+    @Test
+    void bisectMatchesAScalarBisect() {
+        Random random = new Random(17);
+        for (int i = 0; i < 10000; i++) {
+            String text1, text2;
+            if (i % 100 == 0) {
+                // runs of equal characters long enough for the block scans, between changes
+                String run = RandomTexts.text(random, RUN_LENGTHS[random.nextInt(RUN_LENGTHS.length)], "abc");
+                text1 = RandomTexts.text(random, 10, "xyz") + run + RandomTexts.text(random, 10, "xyz") + run;
+                text2 = RandomTexts.text(random, 10, "xyz") + run + RandomTexts.text(random, 10, "xyz") + run + "z";
+            } else {
+                text1 = RandomTexts.text(random, random.nextInt(i % 10 == 0 ? 400 : 40), "abc.");
+                text2 = RandomTexts.mutate(random, text1, "abcd");
+            }
+            assertSameDiff(text1, text2, random.nextInt(3) == 0 ? 1 + random.nextInt(2000) : 0);
+        }
+    }
+
+    @Test
+    void bisectGrowsItsVArrays() {
+        Random random = new Random(17);
+        // texts with little or nothing in common, so the paths pass 1024 diagonals from the middle and the V
+        // arrays have to grow, perhaps more than once
+        assertSameDiff(RandomTexts.text(random, 3000, "abc"), RandomTexts.text(random, 2500, "xyz"), 0);
+        assertSameDiff(RandomTexts.text(random, 3000, "abcdefghijklmnopqrstuvwxyz"),
+                RandomTexts.text(random, 3000, "abcdefghijklmnopqrstuvwxyz"), 0);
+        assertSameDiff(RandomTexts.text(random, 6000, "abcdefghijklmnopqrstuvwxyz"),
+                RandomTexts.text(random, 5000, "abcdefghijklmnopqrstuvwxyz"), 0);
+        // and cut short by the budget while growing
+        assertSameDiff(RandomTexts.text(random, 5000, "abcdefghijklmnopqrstuvwxyz"),
+                RandomTexts.text(random, 5000, "abcdefghijklmnopqrstuvwxyz"), 3_000_000);
+    }
+
+    /**
+     * Asserts that a diff, and whether it ran out of budget, is the same as the scalar reference's.
+     * @param cells The work budget, or 0 for none
+     */
+    private static void assertSameDiff(String text1, String text2, long cells) {
+        diff_match_patch dmp = new diff_match_patch(), scalar = new ScalarDiffMatchPatch();
+        for (diff_match_patch d : new diff_match_patch[]{dmp, scalar}) {
+            d.Diff_Timeout = 0;
+            d.Diff_Budget = cells;
+        }
+        diff_match_patch.Budget budget = dmp.diff_newBudget(), scalarBudget = scalar.diff_newBudget();
+        LinkedList<diff_match_patch.Diff> diffs = dmp.diff_main(text1, text2, false, budget);
+        assertEquals(scalar.diff_main(text1, text2, false, scalarBudget), diffs, () -> text1 + " -> " + text2);
+        assertEquals(scalarBudget.isExhausted(), budget.isExhausted());
+    }
+
+    /**
+     * diff_match_patch with its equality scans and bisection as they were before they were vectorized: a
+     * character at a time, over V arrays sized for the worst case and filled up front. The work budget is
+     * charged the same way.
+     */
+    private static class ScalarDiffMatchPatch extends diff_match_patch {
+
+        @Override
+        public int diff_commonPrefix(String text1, String text2) {
+            int n = Math.min(text1.length(), text2.length());
+            for (int i = 0; i < n; i++) {
+                if (text1.charAt(i) != text2.charAt(i)) {
+                    return i;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public int diff_commonSuffix(String text1, String text2) {
+            int text1_length = text1.length(), text2_length = text2.length();
+            int n = Math.min(text1_length, text2_length);
+            for (int i = 1; i <= n; i++) {
+                if (text1.charAt(text1_length - i) != text2.charAt(text2_length - i)) {
+                    return i - 1;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        protected LinkedList<Diff> diff_bisect(String text1, String text2, Budget budget) {
+            int text1_length = text1.length();
+            int text2_length = text2.length();
+            int max_d = (text1_length + text2_length + 1) / 2;
+            int v_offset = max_d;
+            int v_length = 2 * max_d;
+            int[] v1 = new int[v_length];
+            int[] v2 = new int[v_length];
+            Arrays.fill(v1, -1);
+            Arrays.fill(v2, -1);
+            v1[v_offset + 1] = 0;
+            v2[v_offset + 1] = 0;
+            int delta = text1_length - text2_length;
+            boolean front = (delta % 2 != 0);
+            int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+            long cells = 0;
+            for (int d = 0; d < max_d; d++) {
+                if (budget.exhausted(cells)) {
+                    break;
+                }
+                cells = 0;
+                for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                    int k1_offset = v_offset + k1;
+                    int x1;
+                    if (k1 == -d || (k1 != d && v1[k1_offset - 1] < v1[k1_offset + 1])) {
+                        x1 = v1[k1_offset + 1];
+                    } else {
+                        x1 = v1[k1_offset - 1] + 1;
+                    }
+                    int y1 = x1 - k1;
+                    int snake_start = x1;
+                    while (x1 < text1_length && y1 < text2_length && text1.charAt(x1) == text2.charAt(y1)) {
+                        x1++;
+                        y1++;
+                    }
+                    cells += x1 - snake_start + 1;
+                    v1[k1_offset] = x1;
+                    if (x1 > text1_length) {
+                        k1end += 2;
+                    } else if (y1 > text2_length) {
+                        k1start += 2;
+                    } else if (front) {
+                        int k2_offset = v_offset + delta - k1;
+                        if (k2_offset >= 0 && k2_offset < v_length && v2[k2_offset] != -1) {
+                            int x2 = text1_length - v2[k2_offset];
+                            if (x1 >= x2) {
+                                return split(text1, text2, x1, y1, budget);
+                            }
+                        }
+                    }
+                }
+                for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                    int k2_offset = v_offset + k2;
+                    int x2;
+                    if (k2 == -d || (k2 != d && v2[k2_offset - 1] < v2[k2_offset + 1])) {
+                        x2 = v2[k2_offset + 1];
+                    } else {
+                        x2 = v2[k2_offset - 1] + 1;
+                    }
+                    int y2 = x2 - k2;
+                    int snake_start = x2;
+                    while (x2 < text1_length && y2 < text2_length
+                            && text1.charAt(text1_length - x2 - 1) == text2.charAt(text2_length - y2 - 1)) {
+                        x2++;
+                        y2++;
+                    }
+                    cells += x2 - snake_start + 1;
+                    v2[k2_offset] = x2;
+                    if (x2 > text1_length) {
+                        k2end += 2;
+                    } else if (y2 > text2_length) {
+                        k2start += 2;
+                    } else if (!front) {
+                        int k1_offset = v_offset + delta - k2;
+                        if (k1_offset >= 0 && k1_offset < v_length && v1[k1_offset] != -1) {
+                            int x1 = v1[k1_offset];
+                            int y1 = v_offset + x1 - k1_offset;
+                            x2 = text1_length - x2;
+                            if (x1 >= x2) {
+                                return split(text1, text2, x1, y1, budget);
+                            }
+                        }
+                    }
+                }
+            }
+            LinkedList<Diff> diffs = new LinkedList<>();
+            diffs.add(new Diff(Operation.DELETE, text1));
+            diffs.add(new Diff(Operation.INSERT, text2));
+            return diffs;
+        }
+
+        private LinkedList<Diff> split(String text1, String text2, int x, int y, Budget budget) {
+            LinkedList<Diff> diffs = diff_main(text1.substring(0, x), text2.substring(0, y), false, budget);
+            diffs.addAll(diff_main(text1.substring(x), text2.substring(y), false, budget));
+            return diffs;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks how DiffScheduler shares out budgets, and what a diff falls back to when it runs out.
+ */
+class DiffSchedulerTest {
+
+    @Test
+    void pageBudgetsAreProportionalToLength() {
+        diff_match_patch dmp = new diff_match_patch();
+        dmp.Diff_Budget = 16000;
+        DiffScheduler scheduler = new DiffScheduler(dmp, Long.MAX_VALUE);
+        assertCells(16000, scheduler.pageBudget(DiffScheduler.REFERENCE_LENGTH));
+        assertCells(32000, scheduler.pageBudget(2 * DiffScheduler.REFERENCE_LENGTH));
+        // however short the page, it gets a sixteenth
+        assertCells(1000, scheduler.pageBudget(10));
+    }
+
+    @Test
+    void runDeadlineCutsEveryBudgetShort() {
+        diff_match_patch dmp = new diff_match_patch();
+        DiffScheduler scheduler = new DiffScheduler(dmp, System.currentTimeMillis() - 1);
+        assertTrue(scheduler.pageBudget(DiffScheduler.REFERENCE_LENGTH).exhausted(0));
+        assertTrue(scheduler.documentBudget().exhausted(0));
+        dmp.Diff_Budget = 16000;
+        assertTrue(scheduler.pageBudget(DiffScheduler.REFERENCE_LENGTH).exhausted(0));
+        assertFalse(new DiffScheduler(dmp, Long.MAX_VALUE).documentBudget().exhausted(0));
+    }
+
+    @Test
+    void fallbackShowsChangedLinesWhole() {
+        String text1 = "first line\nsecond line\nthird line\n", text2 = "first line\nsecond lime\nthird line\n";
+        DiffScheduler scheduler = new DiffScheduler(new diff_match_patch(), Long.MAX_VALUE);
+        LinkedList<diff_match_patch.Diff> diffs = scheduler.fallback(text1, text2).unpack();
+        LinkedList<diff_match_patch.Diff> expected = new LinkedList<>();
+        expected.add(new diff_match_patch.Diff(diff_match_patch.Operation.EQUAL, "first line\n"));
+        expected.add(new diff_match_patch.Diff(diff_match_patch.Operation.DELETE, "second line\n"));
+        expected.add(new diff_match_patch.Diff(diff_match_patch.Operation.INSERT, "second lime\n"));
+        expected.add(new diff_match_patch.Diff(diff_match_patch.Operation.EQUAL, "third line\n"));
+        assertEquals(expected, diffs);
+    }
+
+    /**
+     * Asserts that a budget allows exactly this many cells.
+     */
+    private static void assertCells(long cells, diff_match_patch.Budget budget) {
+        assertFalse(budget.exhausted(cells));
+        assertTrue(budget.exhausted(1));
+    }
+}
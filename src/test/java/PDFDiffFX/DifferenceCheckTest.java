@@ -0,0 +1,79 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the check mode's answers on the sample documents.
+ */
+class DifferenceCheckTest {
+
+    private static final File POLICY = new File("src/test/resources/PDFs/00CG596140.pdf");
+    private static final File POLICY_MOD = new File("src/test/resources/PDFs/00CG596140_modified.pdf");
+
+    @Test
+    void sameFileIsSame() throws IOException {
+        assertFalse(differ(new DifferenceCheck(true, true), POLICY, null, POLICY, null));
+    }
+
+    @Test
+    void samePagesAreSameWhenRendered() throws IOException {
+        // without fingerprints the pages' text and renderings are compared
+        DifferenceCheck check = new DifferenceCheck(false, true);
+        assertFalse(differ(check, POLICY, PageRange.parse("2-3"), POLICY, PageRange.parse("2-3")));
+    }
+
+    @Test
+    void differentPageCountsDiffer() throws IOException {
+        DifferenceCheck check = new DifferenceCheck(true, false);
+        assertTrue(differ(check, POLICY, null, POLICY_MOD, null));
+        assertEquals("70 page(s) against 30", check.difference());
+    }
+
+    @Test
+    void changedTextIsFound() throws IOException {
+        for (boolean fingerprints : new boolean[]{true, false}) {
+            DifferenceCheck check = new DifferenceCheck(fingerprints, false);
+            assertTrue(differ(check, POLICY, PageRange.parse("1-5"), POLICY_MOD, PageRange.parse("1-5")));
+            assertEquals("text of page 1", check.difference());
+        }
+    }
+
+    @Test
+    void rotationIsIgnoredAsByTheGraphicalReport(@TempDir Path dir) throws IOException {
+        // a page with no text, so that only its rendering can tell it apart
+        File drawing = dir.resolve("drawing.pdf").toFile(), rotated = dir.resolve("rotated.pdf").toFile();
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.LETTER);
+            doc.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                content.addRect(72, 500, 200, 100);
+                content.fill();
+            }
+            doc.save(drawing);
+            page.setRotation(90);
+            doc.save(rotated);
+        }
+        // without fingerprints, which tell the rotated page apart
+        DifferenceCheck check = new DifferenceCheck(false, true);
+        assertFalse(differ(check, drawing, null, rotated, null), check::difference);
+    }
+
+    private static boolean differ(DifferenceCheck check, File file1, PageRange range1, File file2,
+                                  PageRange range2) throws IOException {
+        try (DocumentSource source1 = new DocumentSource(file1, null);
+             DocumentSource source2 = new DocumentSource(file2, null)) {
+            return check.differ(source1, range1, source2, range2);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package PDFDiffFX;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the scans for runs of equal characters on 1 MB texts that are nearly identical, where those
+ * scans are most of the work:
+ * <ul>
+ *     <li>commonPrefix, commonSuffix: against a copy that differs only in its last (first) character</li>
+ *     <li>bisect: against a copy with eight one-word edits, so every snake is tens of thousands of
+ *     characters long</li>
+ *     <li>diffMain: the same pair through diff_main, i.e. prefix and suffix stripping, then bisection</li>
+ * </ul>
+ * <pre>
+ *   java -cp ... org.openjdk.jmh.Main EqualityScanBenchmark
+ * </pre>
+ * Measured with JDK 17, in microseconds:
+ * <pre>
+ *   scans                                commonPrefix   commonSuffix     bisect   diffMain
+ *   a charAt at a time                            286            458       7286       7867
+ *   Arrays.mismatch over char[]                   153            242      10256       8556
+ *   ... and V arrays grown with d                 150            212       3250       2756
+ * </pre>
+ * These were taken on a single busy core, so expect errors of 20-50%. The scans themselves take half the
+ * time they did, but on inputs this size bisection was dominated by allocating and filling V arrays sized for
+ * the worst case (two million entries each) on every call, which the second change removes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EqualityScanBenchmark {
+
+    private static final int LENGTH = 1 << 20;
+
+    private final diff_match_patch dmp = new diff_match_patch();
+    private String text;
+    private String lastChanged;
+    private String firstChanged;
+    private String edited;
+
+    @Setup
+    public void setUp() {
+        dmp.Diff_Timeout = 0;
+        Random random = new Random(17);
+        StringBuilder builder = new StringBuilder(LENGTH);
+        while (builder.length() < LENGTH) {
+            for (int letters = 2 + random.nextInt(8); letters > 0; letters--) {
+                builder.append((char) ('a' + random.nextInt(26)));
+            }
+            builder.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        builder.setLength(LENGTH);
+        text = builder.toString();
+        lastChanged = text.substring(0, LENGTH - 1) + '#';
+        firstChanged = '#' + text.substring(1);
+        edited = BisectBenchmark.edit(text, random);
+    }
+
+    @Benchmark
+    public int commonPrefix() {
+        return dmp.diff_commonPrefix(text, lastChanged);
+    }
+
+    @Benchmark
+    public int commonSuffix() {
+        return dmp.diff_commonSuffix(text, firstChanged);
+    }
+
+    @Benchmark
+    public LinkedList<diff_match_patch.Diff> bisect() {
+        return dmp.diff_bisect(text, edited, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public LinkedList<diff_match_patch.Diff> diffMain() {
+        return dmp.diff_main(text, edited, false);
+    }
+}
@@ -0,0 +1,150 @@
+package PDFDiffFX;
+
+import de.redsix.pdfcompare.ImageWithDimension;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the graphical pool reports pairs in order, however many workers compare them.
+ */
+class GraphicalDiffPoolTest {
+
+    private static final File POLICY = new File("src/test/resources/PDFs/00CG596140.pdf");
+
+    @Test
+    void resultsFollowThePairs() throws IOException {
+        // the same page twice is identical; different pages are not
+        List<int[]> pairs = Arrays.asList(new int[]{0, 1}, new int[]{1, 1}, new int[]{2, 2}, new int[]{2, 0});
+        // an admission limit below one pair's rasters runs the pairs one at a time, but still runs them
+        long admissionMB = GraphicalDiffPool.defaultAdmissionMB();
+        for (GraphicalDiffPool pool : new GraphicalDiffPool[]{
+                new GraphicalDiffPool(1, null, admissionMB, null),
+                new GraphicalDiffPool(3, DocumentSource.lowMemory(16, null), admissionMB, null),
+                new GraphicalDiffPool(2, null, 1, null)}) {
+            try (DocumentSource source1 = new DocumentSource(POLICY, null);
+                 DocumentSource source2 = new DocumentSource(POLICY, null)) {
+                List<PDDocument> results = pool.compare(source1, source2, pairs);
+                try {
+                    assertEquals(pairs.size(), results.size());
+                    assertNotNull(results.get(0));
+                    assertNull(results.get(1));
+                    assertNull(results.get(2));
+                    assertNotNull(results.get(3));
+                } finally {
+                    close(results);
+                }
+            }
+        }
+    }
+
+    @Test
+    void screeningOnlyEscalatesPairsThatDiffer() throws IOException {
+        List<int[]> pairs = Arrays.asList(new int[]{0, 1}, new int[]{1, 1}, new int[]{2, 2}, new int[]{2, 0});
+        GraphicalDiffPool pool = new GraphicalDiffPool(1, null, GraphicalDiffPool.defaultAdmissionMB(), null);
+        pool.screen(36, 0);
+        try (DocumentSource source1 = new DocumentSource(POLICY, null);
+             DocumentSource source2 = new DocumentSource(POLICY, null)) {
+            List<PDDocument> results = pool.compare(source1, source2, pairs);
+            try {
+                assertNotNull(results.get(0));
+                assertNull(results.get(1));
+                assertNull(results.get(2));
+                assertNotNull(results.get(3));
+            } finally {
+                close(results);
+            }
+        }
+        assertEquals(4, pool.screened());
+        assertEquals(2, pool.escalated());
+    }
+
+    @Test
+    void cachedPagesAreNotRenderedAgain(@TempDir Path dir) throws IOException {
+        List<int[]> pairs = Arrays.asList(new int[]{0, 1}, new int[]{1, 1});
+        RasterCache cache = new RasterCache(dir.toFile(), Long.MAX_VALUE);
+        GraphicalDiffPool pool = new GraphicalDiffPool(1, null, GraphicalDiffPool.defaultAdmissionMB(), cache);
+        for (int run = 0; run < 2; run++) {
+            try (DocumentSource source1 = new DocumentSource(POLICY, null);
+                 DocumentSource source2 = new DocumentSource(POLICY, null)) {
+                List<PDDocument> results = pool.compare(source1, source2, pairs);
+                try {
+                    assertNotNull(results.get(0));
+                    assertNull(results.get(1));
+                } finally {
+                    close(results);
+                }
+            }
+        }
+        // pages 1 and 2 are rendered once, by the first pair, and every later look-up hits
+        assertEquals(2, cache.misses());
+        assertEquals(6, cache.hits());
+    }
+
+    @Test
+    void failingCacheDoesntChangeTheResults(@TempDir Path dir) throws IOException {
+        // as when the disk is full, or the cache directory isn't writable
+        RasterCache cache = new RasterCache(dir.toFile(), Long.MAX_VALUE) {
+            @Override
+            ImageWithDimension get(byte[] pageDigest, int dpi) throws IOException {
+                throw new IOException("look-up failed");
+            }
+
+            @Override
+            void put(byte[] pageDigest, int dpi, ImageWithDimension image) throws IOException {
+                throw new IOException("store failed");
+            }
+        };
+        List<int[]> pairs = Arrays.asList(new int[]{0, 1}, new int[]{1, 1});
+        GraphicalDiffPool pool = new GraphicalDiffPool(1, null, GraphicalDiffPool.defaultAdmissionMB(), cache);
+        pool.screen(36, 0);
+        try (DocumentSource source1 = new DocumentSource(POLICY, null);
+             DocumentSource source2 = new DocumentSource(POLICY, null)) {
+            List<PDDocument> results = pool.compare(source1, source2, pairs);
+            try {
+                assertNotNull(results.get(0));
+                assertNull(results.get(1));
+            } finally {
+                close(results);
+            }
+        }
+    }
+
+    @Test
+    void rotationIsIgnoredAndKept(@TempDir Path dir) throws IOException {
+        File rotated = dir.resolve("rotated.pdf").toFile();
+        try (PDDocument doc = PDDocument.load(POLICY)) {
+            doc.getPage(0).setRotation(90);
+            doc.save(rotated);
+        }
+        GraphicalDiffPool pool = new GraphicalDiffPool(1, null, GraphicalDiffPool.defaultAdmissionMB(), null);
+        try (DocumentSource source1 = new DocumentSource(POLICY, null);
+             DocumentSource source2 = new DocumentSource(rotated, null)) {
+            List<PDDocument> results = pool.compare(source1, source2, Collections.singletonList(new int[]{0, 0}));
+            try {
+                assertNull(results.get(0));
+            } finally {
+                close(results);
+            }
+            // the loaded document is rendered in place, but left as it was
+            assertEquals(90, source2.getDocument().getPage(0).getRotation());
+        }
+    }
+
+    private static void close(List<PDDocument> results) throws IOException {
+        for (PDDocument result : results) {
+            if (result != null) {
+                result.close();
+            }
+        }
+    }
+}
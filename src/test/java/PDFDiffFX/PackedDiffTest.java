@@ -0,0 +1,111 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks PackedDiff's cleanups against diff_match_patch's, which they port, on randomized diffs.
+ */
+class PackedDiffTest {
+
+    // a small alphabet, so that random texts have plenty in common, with word and line breaks
+    private static final String ALPHABET = "ab. \n";
+
+    private final diff_match_patch dmp = new diff_match_patch();
+
+    @Test
+    void cleanupSemanticMatchesDiffMatchPatch() {
+        Random random = new Random(16);
+        for (int i = 0; i < 20000; i++) {
+            String text1 = RandomTexts.text(random, random.nextInt(i % 10 == 0 ? 400 : 40) + 1, ALPHABET);
+            String text2 = RandomTexts.mutate(random, text1, ALPHABET);
+            LinkedList<diff_match_patch.Diff> diffs = dmp.diff_main(text1, text2, false);
+            PackedDiff packed = PackedDiff.pack(text1, text2, diffs);
+            dmp.diff_cleanupSemantic(diffs);
+            packed.cleanupSemantic();
+            assertEquals(diffs, packed.unpack(), () -> text1 + " -> " + text2);
+        }
+    }
+
+    @Test
+    void cleanupSemanticLosslessMatchesDiffMatchPatch() {
+        Random random = new Random(9);
+        for (int i = 0; i < 20000; i++) {
+            String text1 = RandomTexts.text(random, random.nextInt(i % 10 == 0 ? 400 : 40) + 1, ALPHABET);
+            String text2 = RandomTexts.mutate(random, text1, ALPHABET);
+            LinkedList<diff_match_patch.Diff> diffs = dmp.diff_main(text1, text2, false);
+            PackedDiff packed = PackedDiff.pack(text1, text2, diffs);
+            dmp.diff_cleanupSemanticLossless(diffs);
+            packed.cleanupSemanticLossless();
+            assertEquals(diffs, packed.unpack(), () -> text1 + " -> " + text2);
+        }
+    }
+
+    @Test
+    void prettyHtmlMatchesDiffMatchPatch() {
+        Random random = new Random(9);
+        for (int i = 0; i < 20000; i++) {
+            // with the characters that HTML escapes
+            String text1 = RandomTexts.text(random, random.nextInt(i % 10 == 0 ? 400 : 40) + 1, ALPHABET)
+                    .replace('.', i % 2 == 0 ? '<' : '&');
+            String text2 = RandomTexts.mutate(random, text1, ALPHABET).replace('b', '>');
+            LinkedList<diff_match_patch.Diff> diffs = dmp.diff_main(text1, text2, false);
+            PackedDiff packed = PackedDiff.pack(text1, text2, diffs);
+            assertEquals(dmp.diff_prettyHtml(diffs), packed.prettyHtml());
+            dmp.diff_cleanupSemantic(diffs);
+            packed.cleanupSemantic();
+            assertEquals(dmp.diff_prettyHtml(diffs), packed.prettyHtml(), () -> text1 + " -> " + text2);
+        }
+    }
+
+    @Test
+    void cleanupMergeMatchesDiffMatchPatch() {
+        Random random = new Random(16);
+        diff_match_patch.Operation[] operations = diff_match_patch.Operation.values();
+        for (int i = 0; i < 20000; i++) {
+            // arbitrary runs of edits and equalities, unmerged
+            LinkedList<diff_match_patch.Diff> diffs = new LinkedList<>();
+            StringBuilder text1 = new StringBuilder(), text2 = new StringBuilder();
+            for (int n = random.nextInt(i % 10 == 0 ? 200 : 20); n > 0; n--) {
+                diff_match_patch.Operation operation = operations[random.nextInt(operations.length)];
+                String text = RandomTexts.text(random, random.nextInt(6) + 1, ALPHABET);
+                diffs.add(new diff_match_patch.Diff(operation, text));
+                if (operation != diff_match_patch.Operation.INSERT) {
+                    text1.append(text);
+                }
+                if (operation != diff_match_patch.Operation.DELETE) {
+                    text2.append(text);
+                }
+            }
+            PackedDiff packed = PackedDiff.pack(text1.toString(), text2.toString(), diffs);
+            String before = diffs.toString();
+            dmp.diff_cleanupMerge(diffs);
+            packed.cleanupMerge();
+            assertEquals(diffs, packed.unpack(), before);
+        }
+    }
+
+    @Test
+    void cleanupSemanticIsLinearInRunsOfSmallEqualities() {
+        // every equality is eliminated in turn, each of which used to mean rescanning from the start
+        StringBuilder text1 = new StringBuilder(), text2 = new StringBuilder();
+        LinkedList<diff_match_patch.Diff> diffs = new LinkedList<>();
+        for (int i = 0; i < 200000; i++) {
+            diffs.add(new diff_match_patch.Diff(diff_match_patch.Operation.EQUAL, "x"));
+            diffs.add(new diff_match_patch.Diff(diff_match_patch.Operation.DELETE, "ab"));
+            diffs.add(new diff_match_patch.Diff(diff_match_patch.Operation.INSERT, "cd"));
+            text1.append("xab");
+            text2.append("xcd");
+        }
+        PackedDiff packed = PackedDiff.pack(text1.toString(), text2.toString(), diffs);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), packed::cleanupSemantic);
+        // only the first equality, with no edit before it, survives
+        assertEquals(3, packed.size());
+        assertEquals(PackedDiff.EQUAL, packed.operation(0));
+    }
+}
@@ -0,0 +1,63 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that pages are paired up across insertions and removals.
+ */
+class PageAlignmentTest {
+
+    @Test
+    void insertedAndRemovedPagesAreLeftUnpaired() {
+        Random random = new Random(18);
+        long[][] pages = new long[40][];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = PageAlignment.signature(randomPage(random));
+        }
+        // document 2 gains a page after page 3 and loses page 30
+        long[][] edited = new long[pages.length][];
+        for (int i = 0, j = 0; i < pages.length; i++) {
+            if (i == 3) {
+                edited[j++] = PageAlignment.signature(randomPage(random));
+            }
+            if (i != 30) {
+                edited[j++] = pages[i];
+            }
+        }
+        PageAlignment alignment = PageAlignment.align(pages, edited);
+        assertEquals(pages.length - 1, alignment.pairCount());
+        for (int step = 0; step < alignment.size(); step++) {
+            int position1 = alignment.position1(step), position2 = alignment.position2(step);
+            if (position1 == -1) {
+                assertEquals(3, position2);
+            } else if (position2 == -1) {
+                assertEquals(30, position1);
+            } else {
+                assertEquals(position1 < 3 || position1 > 30 ? position1 : position1 + 1, position2);
+            }
+        }
+    }
+
+    @Test
+    void byPositionPairsPagesInOrder() {
+        PageAlignment alignment = PageAlignment.byPosition(3, 5);
+        assertEquals(5, alignment.size());
+        assertEquals(3, alignment.pairCount());
+        assertEquals(2, alignment.position1(2));
+        assertEquals(2, alignment.position2(2));
+        assertEquals(-1, alignment.position1(4));
+        assertEquals(4, alignment.position2(4));
+    }
+
+    private static String randomPage(Random random) {
+        StringBuilder page = new StringBuilder();
+        for (int words = 0; words < 200; words++) {
+            page.append("word").append(random.nextInt(1000)).append(words % 12 == 11 ? '\n' : ' ');
+        }
+        return page.toString();
+    }
+}
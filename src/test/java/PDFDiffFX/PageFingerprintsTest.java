@@ -0,0 +1,81 @@
+package PDFDiffFX;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a page's digest covers everything the page shows, and nothing it doesn't.
+ */
+class PageFingerprintsTest {
+
+    @Test
+    void fontUsedOnlyByAFormWithoutResourcesIsDigested() throws IOException {
+        // the form has no resources of its own, so its /F2 is the page's
+        try (PDDocument doc1 = formPage(PDType1Font.TIMES_ROMAN); PDDocument doc2 = formPage(PDType1Font.COURIER)) {
+            assertFalse(equalDigests(doc1, doc2));
+        }
+        try (PDDocument doc1 = formPage(PDType1Font.TIMES_ROMAN);
+             PDDocument doc2 = formPage(PDType1Font.TIMES_ROMAN)) {
+            assertTrue(equalDigests(doc1, doc2));
+        }
+    }
+
+    @Test
+    void unusedResourcesAreNotDigested() throws IOException {
+        try (PDDocument doc1 = formPage(PDType1Font.TIMES_ROMAN);
+             PDDocument doc2 = formPage(PDType1Font.TIMES_ROMAN)) {
+            doc2.getPage(0).getResources().put(COSName.getPDFName("F9"), PDType1Font.COURIER);
+            assertTrue(equalDigests(doc1, doc2));
+        }
+    }
+
+    private static boolean equalDigests(PDDocument doc1, PDDocument doc2) throws IOException {
+        return PageFingerprints.compare(doc1, new int[]{0}, doc2, new int[]{0}).isUnchanged(0);
+    }
+
+    /**
+     * @return A document whose only page draws a form, which has no resources and shows text in font /F2 of
+     *      the page's resources
+     */
+    private static PDDocument formPage(PDType1Font font2) throws IOException {
+        PDDocument doc = new PDDocument();
+        PDPage page = new PDPage();
+        doc.addPage(page);
+        COSStream form = doc.getDocument().createCOSStream();
+        form.setItem(COSName.TYPE, COSName.XOBJECT);
+        form.setItem(COSName.SUBTYPE, COSName.FORM);
+        form.setItem(COSName.BBOX, page.getMediaBox().getCOSArray());
+        write(form, "BT /F2 12 Tf 72 720 Td (Hello) Tj ET");
+
+        PDResources resources = new PDResources();
+        resources.put(COSName.getPDFName("F1"), PDType1Font.HELVETICA);
+        resources.put(COSName.getPDFName("F2"), font2);
+        COSDictionary xobjects = new COSDictionary();
+        xobjects.setItem(COSName.getPDFName("Fm0"), form);
+        resources.getCOSObject().setItem(COSName.XOBJECT, xobjects);
+        page.setResources(resources);
+
+        COSStream contents = doc.getDocument().createCOSStream();
+        write(contents, "BT /F1 12 Tf 72 700 Td (World) Tj ET /Fm0 Do");
+        page.getCOSObject().setItem(COSName.CONTENTS, contents);
+        return doc;
+    }
+
+    private static void write(COSStream stream, String content) throws IOException {
+        try (OutputStream out = stream.createOutputStream()) {
+            out.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
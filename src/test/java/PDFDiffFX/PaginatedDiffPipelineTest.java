@@ -0,0 +1,100 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the pipelined paginated diff writes the same report, and returns the same text, as extracting
+ * both documents and diffing their pages one after another.
+ */
+class PaginatedDiffPipelineTest {
+
+    private static final File POLICY = new File("src/test/resources/PDFs/00CG596140.pdf");
+    private static final File MODIFIED = new File("src/test/resources/PDFs/00CG596140_modified.pdf");
+
+    @TempDir
+    File dir;
+
+    @Test
+    void unchangedPagesAndLeftoversOfTheSecondDocument() throws IOException {
+        // pairs 1-5 are the same page, and so unchanged; the second document has four pages left over
+        assertSameAsSequential(POLICY, "1-12", POLICY, "1-5,20-30", true);
+    }
+
+    @Test
+    void unchangedPagesAndLeftoversOfTheFirstDocument() throws IOException {
+        // unchanged pairs between changed ones, and six pages of the first document left over
+        assertSameAsSequential(POLICY, "2-4,10-12,40-45", POLICY, "2,7,4,10-12", true);
+    }
+
+    @Test
+    void withoutFingerprints() throws IOException {
+        // every page changed, and the first document's last pages left over
+        assertSameAsSequential(POLICY, "1-12", MODIFIED, "1-8", false);
+    }
+
+    private void assertSameAsSequential(File file1, String spec1, File file2, String spec2, boolean fingerprinted)
+            throws IOException {
+        PageRange range1 = spec1 == null ? null : PageRange.parse(spec1);
+        PageRange range2 = spec2 == null ? null : PageRange.parse(spec2);
+        File report = new File(dir, "pipeline.html");
+        Files.deleteIfExists(report.toPath());
+        ReportTool reportTool = new ReportTool(new File(dir, "report").getPath());
+        // a budget in cells rather than time, so that both runs diff every page alike
+        reportTool.dmp.Diff_Budget = 100_000_000;
+        TextExtractor extractor = new TextExtractor(1, null);
+        try (DocumentSource source1 = new DocumentSource(file1, null);
+             DocumentSource source2 = new DocumentSource(file2, null)) {
+            int[] pages1 = PageRange.resolve(range1, source1.getDocument().getNumberOfPages());
+            int[] pages2 = PageRange.resolve(range2, source2.getDocument().getNumberOfPages());
+            PageFingerprints fingerprints = !fingerprinted ? null
+                    : PageFingerprints.compare(source1.getDocument(), pages1, source2.getDocument(), pages2);
+            // a short queue, so that the stages block on each other
+            ExtractedText[] texts = new PaginatedDiffPipeline(reportTool, extractor, 2)
+                    .run(source1, range1, source2, range2, fingerprints, report.getPath());
+
+            ExtractedText text1 = extractor.extract(source1, range1, null, null);
+            ExtractedText text2 = extractor.extract(source2, range2, null, null);
+            assertSameText(text1, texts[0]);
+            assertSameText(text2, texts[1]);
+
+            StringBuilder expected = new StringBuilder();
+            int pairs = Math.min(text1.pageCount(), text2.pageCount());
+            for (int i = 0; i < pairs; i++) {
+                if (fingerprints == null || !fingerprints.isUnchanged(i)) {
+                    String html = reportTool.formatPageDiff(text1.pageNumber(i), text1.getPage(i), text2.getPage(i));
+                    expected.append(html == null ? "" : html);
+                }
+            }
+            for (int i = pairs; i < text1.pageCount(); i++) {
+                expected.append(reportTool.formatLeftoverPage(text1.getPage(i), true));
+            }
+            for (int i = pairs; i < text2.pageCount(); i++) {
+                expected.append(reportTool.formatLeftoverPage(text2.getPage(i), false));
+            }
+            assertTrue(expected.length() > 0);
+            // the report is written in the platform's charset
+            assertArrayEquals(expected.toString().getBytes(Charset.defaultCharset()),
+                    Files.readAllBytes(report.toPath()));
+            if (fingerprints != null && file1.equals(file2)) {
+                assertTrue(fingerprints.unchangedCount() > 0);
+            }
+        }
+    }
+
+    private static void assertSameText(ExtractedText expected, ExtractedText actual) {
+        assertEquals(expected.getText(), actual.getText());
+        assertEquals(expected.pageCount(), actual.pageCount());
+        for (int i = 0; i < expected.pageCount(); i++) {
+            assertEquals(expected.pageNumber(i), actual.pageNumber(i));
+            assertEquals(expected.pageStart(i), actual.pageStart(i));
+        }
+    }
+}
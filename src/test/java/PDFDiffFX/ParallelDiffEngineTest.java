@@ -0,0 +1,107 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a text diffed in segments is cut at anchors, stitched back into a diff of both whole texts,
+ * and charged to the caller's budget.
+ */
+class ParallelDiffEngineTest {
+
+    private final diff_match_patch dmp = new diff_match_patch();
+
+    @Test
+    void segmentsAreCutAtAnchorLines() {
+        String[] texts = texts(6000);
+        try (ParallelDiffEngine engine = new ParallelDiffEngine(new MyersEngine(dmp, false), 4)) {
+            List<int[]> segments = engine.segments(texts[0], texts[1]);
+            assertTrue(segments.size() > 1);
+            int end1 = 0, end2 = 0;
+            for (int[] segment : segments) {
+                // contiguous, and cut at the start of the same line in both texts
+                assertEquals(end1, segment[0]);
+                assertEquals(end2, segment[2]);
+                assertEquals(line(texts[0], segment[0]), line(texts[1], segment[2]));
+                end1 = segment[1];
+                end2 = segment[3];
+            }
+            assertEquals(texts[0].length(), end1);
+            assertEquals(texts[1].length(), end2);
+        }
+    }
+
+    @Test
+    void stitchedDiffCoversBothTexts() {
+        String[] texts = texts(6000);
+        for (boolean words : new boolean[]{false, true}) {
+            for (DiffEngine inner : new DiffEngine[]{new MyersEngine(dmp, words), new PatienceEngine(dmp, words)}) {
+                try (ParallelDiffEngine engine = new ParallelDiffEngine(inner, 4)) {
+                    diff_match_patch.Budget budget = dmp.diff_newBudget();
+                    LinkedList<diff_match_patch.Diff> diffs = engine.diff(texts[0], texts[1], budget).unpack();
+                    assertFalse(budget.isExhausted());
+                    assertEquals(texts[0], dmp.diff_text1(diffs));
+                    assertEquals(texts[1], dmp.diff_text2(diffs));
+                    // diffs either side of a cut are merged when they are the same operation
+                    Iterator<diff_match_patch.Diff> it = diffs.iterator();
+                    for (diff_match_patch.Diff previous = it.next(), next; it.hasNext(); previous = next) {
+                        next = it.next();
+                        assertNotEquals(previous.operation, next.operation);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void exhaustedSegmentBudgetIsReported() {
+        String[] texts = texts(6000);
+        dmp.Diff_Budget = 1000;
+        try (ParallelDiffEngine engine = new ParallelDiffEngine(new MyersEngine(dmp, false), 4)) {
+            diff_match_patch.Budget budget = dmp.diff_newBudget();
+            LinkedList<diff_match_patch.Diff> diffs = engine.diff(texts[0], texts[1], budget).unpack();
+            assertTrue(budget.isExhausted());
+            // a diff cut short still covers both texts
+            assertEquals(texts[0], dmp.diff_text1(diffs));
+            assertEquals(texts[1], dmp.diff_text2(diffs));
+        }
+    }
+
+    @Test
+    void portionsShareOutTheCells() {
+        diff_match_patch.Budget budget = new diff_match_patch.Budget(Long.MAX_VALUE, 16000);
+        diff_match_patch.Budget portion = budget.portion(0.25);
+        assertFalse(portion.exhausted(4000));
+        assertTrue(portion.exhausted(1));
+        assertFalse(budget.isExhausted());
+        budget.absorb(portion);
+        assertTrue(budget.isExhausted());
+        // an unlimited budget stays unlimited
+        assertFalse(new diff_match_patch.Budget(Long.MAX_VALUE, Long.MAX_VALUE).portion(0.01)
+                .exhausted(Long.MAX_VALUE - 1));
+    }
+
+    /**
+     * @return Two texts of numbered, and so unique, lines with a change every 97 lines, long enough to be
+     *      diffed in segments
+     */
+    private static String[] texts(int lines) {
+        StringBuilder text1 = new StringBuilder(), text2 = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text1.append("clause ").append(i).append(" of the agreement between the parties\n");
+            text2.append("clause ").append(i).append(i % 97 == 5 ? " of this agreement between the parties\n"
+                    : " of the agreement between the parties\n");
+        }
+        assertTrue(text1.length() + text2.length() >= ParallelDiffEngine.MIN_PARALLEL_LENGTH);
+        return new String[]{text1.toString(), text2.toString()};
+    }
+
+    private static String line(String text, int start) {
+        return text.substring(start, text.indexOf('\n', start) + 1);
+    }
+}
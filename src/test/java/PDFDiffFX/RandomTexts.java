@@ -0,0 +1,90 @@
+package PDFDiffFX;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * Random texts, and random edits of them, for the tests that check diffs against a reference on many cases.
+ */
+final class RandomTexts {
+
+    // a few lines that recur, so that random texts have both unique and repeated lines
+    private static final String[] LINES = {
+            "Terms and conditions apply.\n", "See the schedule.\n", "\n", "Section 1\n", "The insured & the insurer\n"};
+
+    private RandomTexts() {
+    }
+
+    /**
+     * @return length characters drawn from the alphabet
+     */
+    static String text(Random random, int length, String alphabet) {
+        StringBuilder text = new StringBuilder();
+        for (int n = 0; n < length; n++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return The text with a few random insertions, deletions and replacements drawn from the alphabet
+     */
+    static String mutate(Random random, String text, String alphabet) {
+        StringBuilder mutated = new StringBuilder(text);
+        for (int n = random.nextInt(6); n > 0; n--) {
+            int at = random.nextInt(mutated.length() + 1);
+            int end = Math.min(mutated.length(), at + random.nextInt(8));
+            mutated.replace(at, end, random.nextBoolean() ? text(random, random.nextInt(8), alphabet) : "");
+        }
+        return mutated.toString();
+    }
+
+    /**
+     * @return Up to maxLines lines, each either a recurring line or a short random one
+     */
+    static String lines(Random random, int maxLines) {
+        StringBuilder text = new StringBuilder();
+        for (int n = random.nextInt(maxLines) + 1; n > 0; n--) {
+            text.append(line(random));
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return The text with a few lines inserted, removed or moved, and a few characters edited
+     */
+    static String mutateLines(Random random, String text) {
+        LinkedList<String> lines = new LinkedList<>(Arrays.asList(text.split("(?<=\n)")));
+        for (int n = random.nextInt(4); n > 0; n--) {
+            int at = random.nextInt(lines.size() + 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    lines.add(at, line(random));
+                    break;
+                case 1:
+                    if (at < lines.size()) {
+                        lines.remove(at);
+                    }
+                    break;
+                default:
+                    if (at < lines.size()) {
+                        lines.add(random.nextInt(lines.size()), lines.remove(at));
+                    }
+            }
+        }
+        StringBuilder mutated = new StringBuilder(String.join("", lines));
+        for (int n = random.nextInt(3); n > 0 && mutated.length() > 0; n--) {
+            int at = random.nextInt(mutated.length());
+            mutated.replace(at, Math.min(mutated.length(), at + random.nextInt(4)), random.nextBoolean() ? "x" : "");
+        }
+        return mutated.toString();
+    }
+
+    private static String line(Random random) {
+        if (random.nextBoolean()) {
+            return LINES[random.nextInt(LINES.length)];
+        }
+        return text(random, random.nextInt(12) + 1, "ab .,") + '\n';
+    }
+}
@@ -0,0 +1,102 @@
+package PDFDiffFX;
+
+import de.redsix.pdfcompare.ImageWithDimension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the raster cache gives back exactly the pixels it was given, and only for the same page and
+ * resolution.
+ */
+class RasterCacheTest {
+
+    private static final byte[] PAGE1 = digest("page 1"), PAGE2 = digest("page 2");
+
+    @TempDir
+    File dir;
+
+    @Test
+    void storedPagesAreReturnedExactly() throws IOException {
+        RasterCache cache = new RasterCache(dir, Long.MAX_VALUE);
+        ImageWithDimension page = page(300, 200, 1);
+        assertNull(cache.get(PAGE1, 300));
+        cache.put(PAGE1, 300, page);
+
+        ImageWithDimension cached = new RasterCache(dir, Long.MAX_VALUE).get(PAGE1, 300);
+        assertNotNull(cached);
+        assertEquals(page.width, cached.width);
+        assertEquals(page.height, cached.height);
+        assertSamePixels(page.bufferedImage, cached.bufferedImage);
+        // other pages and resolutions are other entries
+        assertNull(cache.get(PAGE2, 300));
+        assertNull(cache.get(PAGE1, 150));
+        assertEquals(0, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    void corruptEntryIsAMiss() throws IOException {
+        RasterCache cache = new RasterCache(dir, Long.MAX_VALUE);
+        cache.put(PAGE1, 300, page(64, 64, 2));
+        File[] entries = dir.listFiles((d, name) -> name.endsWith(".rsc"));
+        assertEquals(1, entries.length);
+        try (RandomAccessFile raf = new RandomAccessFile(entries[0], "rw")) {
+            raf.seek(raf.length() - 40);
+            int b = raf.read();
+            raf.seek(raf.length() - 40);
+            raf.write(b ^ 1);
+        }
+        assertNull(cache.get(PAGE1, 300));
+        assertFalse(entries[0].exists());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        // random pixels hardly deflate, so each entry is over 25 KB and two don't fit
+        RasterCache cache = new RasterCache(dir, 40 * 1024);
+        cache.put(PAGE1, 300, page(100, 100, 3));
+        File[] entries = dir.listFiles((d, name) -> name.endsWith(".rsc"));
+        assertEquals(1, entries.length);
+        assertTrue(entries[0].setLastModified(0));
+        cache.put(PAGE2, 300, page(100, 100, 4));
+        assertFalse(entries[0].exists());
+        assertNull(cache.get(PAGE1, 300));
+        assertNotNull(cache.get(PAGE2, 300));
+    }
+
+    /**
+     * @return A page of random pixels, a quarter of them white; like PDFRenderer's, some have their unused top
+     *      byte set
+     */
+    private static ImageWithDimension page(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt(4) == 0 ? 0xffffffff : random.nextInt(0x1000000);
+        }
+        return new ImageWithDimension(image, width * 0.24f, height * 0.24f);
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        // the raw ints, as DiffImage compares them
+        assertArrayEquals(((DataBufferInt) expected.getRaster().getDataBuffer()).getData(),
+                ((DataBufferInt) actual.getRaster().getDataBuffer()).getData());
+    }
+
+    private static byte[] digest(String s) {
+        return DocumentSource.newSha256().digest(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
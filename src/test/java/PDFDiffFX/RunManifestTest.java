@@ -0,0 +1,77 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a run manifest keeps what a run used, and is discarded rather than trusted when it can't be.
+ */
+class RunManifestTest {
+
+    private static final byte[] PAGE1 = digest("page 1"), PAGE2 = digest("page 2"), PAGE3 = digest("page 3");
+
+    @TempDir
+    File dir;
+
+    @Test
+    void savedEntriesAreReused() throws IOException {
+        File file = new File(dir, "manifest");
+        RunManifest first = RunManifest.load(file, "myers");
+        assertNull(first.text(PAGE1));
+        first.putText(PAGE1, "caf\u00e9 text");
+        first.putDiff(PAGE1, PAGE2, "<del>x</del>");
+        first.putDiff(PAGE1, PAGE3, null);
+        first.save();
+
+        RunManifest second = RunManifest.load(file, "myers");
+        assertEquals("caf\u00e9 text", second.text(PAGE1));
+        assertEquals("<del>x</del>", second.diff(PAGE1, PAGE2));
+        assertEquals("", second.diff(PAGE1, PAGE3));
+        assertNull(second.diff(PAGE2, PAGE1));
+        assertEquals(1, second.textHits());
+        assertEquals(2, second.diffHits());
+        second.save();
+
+        // only what the second run looked up survives it
+        RunManifest third = RunManifest.load(file, "myers");
+        assertNull(third.diff(PAGE2, PAGE1));
+        assertNotNull(third.diff(PAGE1, PAGE3));
+    }
+
+    @Test
+    void diffsUnderOtherSettingsAreDropped() throws IOException {
+        File file = new File(dir, "manifest");
+        RunManifest first = RunManifest.load(file, "myers");
+        first.putText(PAGE1, "text");
+        first.putDiff(PAGE1, PAGE2, "<del>x</del>");
+        first.save();
+
+        RunManifest second = RunManifest.load(file, "patience");
+        assertEquals("text", second.text(PAGE1));
+        assertNull(second.diff(PAGE1, PAGE2));
+    }
+
+    @Test
+    void corruptManifestIsIgnored() throws IOException {
+        File file = new File(dir, "manifest");
+        RunManifest first = RunManifest.load(file, "myers");
+        first.putText(PAGE1, "text");
+        first.save();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 40);
+            raf.write('#');
+        }
+        assertNull(RunManifest.load(file, "myers").text(PAGE1));
+    }
+
+    private static byte[] digest(String s) {
+        return DocumentSource.newSha256().digest(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,157 @@
+package PDFDiffFX;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the text cache gives back exactly the text and pages it was given, and only for the same file
+ * and extractor settings.
+ */
+class TextCacheTest {
+
+    // four pages, one of them blank, with text that isn't ASCII
+    private static final ExtractedText TEXT = text("Page one\n", "f\u00fcr \u20ac5\n", "", "Page four\n");
+
+    @TempDir
+    File dir;
+
+    @Test
+    void storedTextIsReturnedExactly() throws IOException {
+        try (DocumentSource source = source("a.pdf", "document a")) {
+            TextCache cache = new TextCache(dir, Long.MAX_VALUE);
+            assertNull(cache.get(source));
+            cache.put(source, TEXT);
+
+            ExtractedText cached = new TextCache(dir, Long.MAX_VALUE).get(source);
+            assertNotNull(cached);
+            assertEquals(TEXT.getText(), cached.getText());
+            assertEquals(TEXT.pageCount(), cached.pageCount());
+            for (int i = 0; i < TEXT.pageCount(); i++) {
+                assertEquals(TEXT.pageStart(i), cached.pageStart(i));
+                assertEquals(TEXT.pageEnd(i), cached.pageEnd(i));
+            }
+        }
+    }
+
+    @Test
+    void otherFilesAndSettingsMiss() throws IOException {
+        try (DocumentSource source = source("a.pdf", "document a");
+             DocumentSource changed = source("b.pdf", "document a, changed")) {
+            TextCache cache = new TextCache(dir, Long.MAX_VALUE);
+            cache.put(source, TEXT);
+            assertNull(cache.get(changed));
+            // as after a PDFBox upgrade
+            assertNull(new TextCache(dir, Long.MAX_VALUE, "other settings").get(source));
+            assertNotNull(cache.get(source));
+        }
+    }
+
+    @Test
+    void corruptEntryIsAMiss() throws IOException {
+        try (DocumentSource source = source("a.pdf", "document a")) {
+            TextCache cache = new TextCache(dir, Long.MAX_VALUE);
+            cache.put(source, TEXT);
+            File entry = onlyEntry();
+            try (RandomAccessFile raf = new RandomAccessFile(entry, "rw")) {
+                raf.seek(30);
+                int b = raf.read();
+                raf.seek(30);
+                raf.write(b ^ 1);
+            }
+            assertNull(cache.get(source));
+            assertFalse(entry.exists());
+        }
+    }
+
+    @Test
+    void truncatedEntryIsAMiss() throws IOException {
+        try (DocumentSource source = source("a.pdf", "document a")) {
+            TextCache cache = new TextCache(dir, Long.MAX_VALUE);
+            // cut into the text, and into the header
+            for (int length : new int[]{60, 5}) {
+                cache.put(source, TEXT);
+                File entry = onlyEntry();
+                try (RandomAccessFile raf = new RandomAccessFile(entry, "rw")) {
+                    raf.setLength(length);
+                }
+                assertNull(cache.get(source));
+                assertFalse(entry.exists());
+            }
+        }
+    }
+
+    @Test
+    void otherFormatVersionIsAMiss() throws IOException {
+        try (DocumentSource source = source("a.pdf", "document a")) {
+            TextCache cache = new TextCache(dir, Long.MAX_VALUE);
+            cache.put(source, TEXT);
+            // an entry from another format version, intact but unreadable
+            File entry = onlyEntry();
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(entry.toPath()));
+            bytes.putInt(4, bytes.getInt(4) + 1);
+            MessageDigest digest = DocumentSource.newSha256();
+            digest.update(bytes.array(), 0, bytes.capacity() - 32);
+            bytes.position(bytes.capacity() - 32);
+            bytes.put(digest.digest());
+            Files.write(entry.toPath(), bytes.array());
+
+            assertNull(cache.get(source));
+            assertFalse(entry.exists());
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        // each entry is over 2 KB, so two don't fit
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            page.append("line ").append(i).append('\n');
+        }
+        ExtractedText text = text(page.toString());
+        try (DocumentSource source1 = source("a.pdf", "document a");
+             DocumentSource source2 = source("b.pdf", "document b")) {
+            TextCache cache = new TextCache(dir, 3 * 1024);
+            cache.put(source1, text);
+            assertTrue(onlyEntry().setLastModified(0));
+            cache.put(source2, text);
+            assertNull(cache.get(source1));
+            assertNotNull(cache.get(source2));
+        }
+    }
+
+    private static ExtractedText text(String... pages) {
+        int[] offsets = new int[pages.length + 1];
+        for (int i = 0; i < pages.length; i++) {
+            offsets[i + 1] = offsets[i] + pages[i].length();
+        }
+        return new ExtractedText(String.join("", pages), offsets);
+    }
+
+    /**
+     * @return The one entry in the cache
+     */
+    private File onlyEntry() {
+        File[] entries = dir.listFiles((d, name) -> name.endsWith(".txc"));
+        assertEquals(1, entries.length);
+        return entries[0];
+    }
+
+    /**
+     * @return A source for a file with the given content; only its hash matters to the cache
+     */
+    private DocumentSource source(String name, String content) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return new DocumentSource(file, null);
+    }
+}
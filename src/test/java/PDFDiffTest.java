@@ -115,6 +115,22 @@ class PDFDiffTest {
         assertFalse(PDFDiffTest.stdout.toString().contains(expected));
     }
 
+    @Test
+    void threadedExtractionMatchesSequential() throws IOException {
+        File report = new File(testOutFile + "/testOut_whole_textual_diff.html");
+        PDFDiff.main(new String[] {policyPdf, policyPdfMod, testOutFile});
+        String sequential = new String(java.nio.file.Files.readAllBytes(report.toPath()));
+        PDFDiff.main(new String[] {policyPdf, policyPdfMod, testOutFile, "-t", "4"});
+        String threaded = new String(java.nio.file.Files.readAllBytes(report.toPath()));
+        assertEquals(sequential, threaded);
+    }
+
+    @Test
+    void unknownDiffEngineRejected() {
+        PDFDiff.main(new String[] {policyPdf, policyPdfMod, testOutFile, "-e", "bogus"});
+        assertTrue(PDFDiffTest.stdout.toString().contains("Unknown diff engine: bogus"));
+    }
+
     // figure out why extra spaces are getting encoded as weird chars, how to prevent
 
     // test image generation